@@ -60,6 +60,12 @@ public class DummyListFragment extends ListFragment implements OnItemClickListen
             "Memento", "The Prestige", "Batman", "Black Swan", "The Fountain", "Pan's Labyrinth"
     };
 
+    /**
+     * Argument holding the number of generated rows to show instead of
+     * {@link #MOVIES}
+     */
+    public static final String ARG_ROW_COUNT = "row_count";
+
     /**
      * The header to bind the {@link BackScrollManager} to
      */
@@ -87,9 +93,13 @@ public class DummyListFragment extends ListFragment implements OnItemClickListen
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         // Simple ArrayAdapter
         Arrays.sort(MOVIES);
-        final CarouselListAdapter adapter = new CarouselListAdapter(getActivity());
-        for (final String movie : MOVIES) {
-            adapter.add(movie);
+        final Bundle args = getArguments();
+        final int rowCount = args != null ? args.getInt(ARG_ROW_COUNT, 0) : 0;
+        final CarouselListAdapter adapter = new CarouselListAdapter(getActivity(), rowCount);
+        if (rowCount == 0) {
+            for (final String movie : MOVIES) {
+                adapter.add(movie);
+            }
         }
 
         // Bind the data
@@ -159,13 +169,21 @@ public class DummyListFragment extends ListFragment implements OnItemClickListen
          */
         private final View mHeader;
 
+        /**
+         * The number of generated rows, or 0 to show the added items
+         */
+        private final int mRowCount;
+
         /**
          * Constructor of <code>CarouselListAdapter</code>
          * 
          * @param context The {@link Context} to use
+         * @param rowCount The number of rows to generate from {@link #MOVIES},
+         *            or 0 to show the added items
          */
-        public CarouselListAdapter(Context context) {
+        public CarouselListAdapter(Context context, int rowCount) {
             super(context, 0);
+            mRowCount = rowCount;
             // Inflate the fake header
             mHeader = LayoutInflater.from(context).inflate(R.layout.faux_carousel, null);
         }
@@ -211,7 +229,19 @@ public class DummyListFragment extends ListFragment implements OnItemClickListen
          */
         @Override
         public int getCount() {
-            return MOVIES.length + 1;
+            return (mRowCount > 0 ? mRowCount : MOVIES.length) + 1;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getItem(int position) {
+            if (mRowCount > 0) {
+                // Generate the rows on demand rather than holding them all
+                return MOVIES[position % MOVIES.length] + " #" + position;
+            }
+            return super.getItem(position);
         }
 
         /**
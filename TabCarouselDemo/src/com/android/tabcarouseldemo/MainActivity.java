@@ -16,7 +16,6 @@
 
 package com.android.tabcarouseldemo;
 
-import android.content.res.Resources;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.support.v4.app.FragmentActivity;
@@ -24,6 +23,11 @@ import android.support.v4.view.ViewPager;
 
 import com.android.tabcarousel.CarouselContainer;
 import com.android.tabcarousel.CarouselPagerAdapter;
+import com.android.tabcarousel.CarouselSnapshot;
+import com.android.tabcarousel.TabImageDiskCache;
+import com.android.tabcarousel.TabImageLoader;
+
+import java.io.File;
 
 /**
  * @author Andrew Neal (andrewdneal@gmail.com)
@@ -40,18 +44,25 @@ public class MainActivity extends FragmentActivity {
      */
     private static final int SECOND_TAB = CarouselContainer.TAB_INDEX_SECOND;
 
+    /**
+     * Maximum size of the tab image disk cache
+     */
+    private static final long DISK_CACHE_SIZE = 2 * 1024 * 1024;
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Start reading the header saved by the last launch while inflating
+        final CarouselSnapshot snapshot = new CarouselSnapshot(this, "main");
+        // The header always shows the same movies
+        snapshot.setContentKey("lost_in_translation,the_prestige");
+        snapshot.preload();
         // Set the layout
         setContentView(R.layout.carousel_container);
 
-        // Resources
-        final Resources res = getResources();
-
         // Initialize the header
         final CarouselContainer carousel = (CarouselContainer) findViewById(R.id.carousel_header);
         // Indicates that the carousel should only show a fraction of the
@@ -60,9 +71,18 @@ public class MainActivity extends FragmentActivity {
         // Add some text to the labels
         carousel.setLabel(FIRST_TAB, "Lost in Translation");
         carousel.setLabel(SECOND_TAB, "The Prestige");
-        // Add some images to the tabs
-        carousel.setImageDrawable(FIRST_TAB, res.getDrawable(R.drawable.lost_in_translation));
-        carousel.setImageDrawable(SECOND_TAB, res.getDrawable(R.drawable.the_prestige));
+        // Add some images to the tabs, downsampled to the tab size and cached
+        // on disk for the next launch
+        final TabImageLoader imageLoader = new TabImageLoader(this);
+        imageLoader.setDiskCache(new TabImageDiskCache(new File(getCacheDir(), "tab_images"),
+                DISK_CACHE_SIZE));
+        // Show a low-quality preview while the full image is decoded
+        imageLoader.setProgressive(true);
+        carousel.setImageLoader(imageLoader);
+        carousel.loadImageResource(FIRST_TAB, R.drawable.lost_in_translation);
+        carousel.loadImageResource(SECOND_TAB, R.drawable.the_prestige);
+        // Show the saved header until the images are decoded
+        carousel.setSnapshot(snapshot);
 
         // The Bundle for the color fragment
         final Bundle blue = new Bundle();
@@ -75,8 +95,9 @@ public class MainActivity extends FragmentActivity {
 
         // Initialize the pager
         final ViewPager carouselPager = (ViewPager) findViewById(R.id.carousel_pager);
-        // This is used to communicate between the pager and header
-        carouselPager.setOnPageChangeListener(new CarouselPagerAdapter(carouselPager, carousel));
+        // This is used to communicate between the pager and header, it
+        // registers itself with both
+        new CarouselPagerAdapter(carouselPager, carousel);
         carouselPager.setAdapter(pagerAdapter);
     }
 
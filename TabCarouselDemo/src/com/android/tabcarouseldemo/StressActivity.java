@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarouseldemo;
+
+import android.annotation.TargetApi;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.view.ViewPager;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.android.tabcarousel.CarouselContainer;
+import com.android.tabcarousel.CarouselPagerAdapter;
+
+import java.io.File;
+
+/**
+ * A heavier version of {@link MainActivity} used as a repeatable benchmark:
+ * every tab shows a long generated list, the tab images are decoded at full
+ * size and {@link StressDriver} replays scripted interactions before writing
+ * the frame timings to a file. Every setting can be passed as an extra, for
+ * example:
+ *
+ * <pre>
+ * adb shell am start -n com.android.tabcarouseldemo/.StressActivity \
+ *         --ei tab_count 2 --ei row_count 100000 --ei artwork_size 2048 --ei iterations 5
+ * </pre>
+ */
+public class StressActivity extends FragmentActivity implements StressDriver.OnFinishedListener {
+
+    private static final String TAG = "StressActivity";
+
+    /**
+     * Extra holding the number of tabs, 1 or 2
+     */
+    public static final String EXTRA_TAB_COUNT = "tab_count";
+
+    /**
+     * Extra holding the number of rows of each list
+     */
+    public static final String EXTRA_ROW_COUNT = "row_count";
+
+    /**
+     * Extra holding the width the tab images are decoded at
+     */
+    public static final String EXTRA_ARTWORK_SIZE = "artwork_size";
+
+    /**
+     * Extra holding the number of times the script is replayed
+     */
+    public static final String EXTRA_ITERATIONS = "iterations";
+
+    private static final int DEFAULT_TAB_COUNT = 2;
+
+    private static final int DEFAULT_ROW_COUNT = 100000;
+
+    private static final int DEFAULT_ARTWORK_SIZE = 2048;
+
+    private static final int DEFAULT_ITERATIONS = 5;
+
+    /**
+     * How long to wait for the pages to be created before starting
+     */
+    private static final int START_DELAY = 1000;
+
+    /**
+     * Tab artwork, by tab index
+     */
+    private static final int[] ARTWORK = {
+            R.drawable.lost_in_translation, R.drawable.the_prestige
+    };
+
+    /**
+     * Replays the interactions
+     */
+    private StressDriver mDriver;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // Set the layout
+        setContentView(R.layout.carousel_container);
+
+        final Intent intent = getIntent();
+        // The carousel only has a first and a second tab
+        final int tabCount = Math.max(1,
+                Math.min(intent.getIntExtra(EXTRA_TAB_COUNT, DEFAULT_TAB_COUNT), ARTWORK.length));
+        final int rowCount = intent.getIntExtra(EXTRA_ROW_COUNT, DEFAULT_ROW_COUNT);
+        final int artworkSize = intent.getIntExtra(EXTRA_ARTWORK_SIZE, DEFAULT_ARTWORK_SIZE);
+        final int iterations = intent.getIntExtra(EXTRA_ITERATIONS, DEFAULT_ITERATIONS);
+
+        // Initialize the header
+        final CarouselContainer carousel = (CarouselContainer) findViewById(R.id.carousel_header);
+        carousel.setUsesDualTabs(tabCount > 1);
+        carousel.setMetricsEnabled(true);
+
+        // Initialize the pager adatper
+        final PagerAdapter pagerAdapter = new PagerAdapter(this);
+        for (int i = 0; i < tabCount; i++) {
+            carousel.setLabel(i, "Tab " + (i + 1));
+            // Deliberately skip the TabImageLoader to keep large bitmaps in
+            // the tabs
+            carousel.setImageBitmap(i, decodeArtwork(ARTWORK[i], artworkSize));
+
+            final Bundle args = new Bundle();
+            args.putInt(DummyListFragment.ARG_ROW_COUNT, rowCount);
+            pagerAdapter.add(DummyListFragment.class, args);
+        }
+
+        // Initialize the pager
+        final ViewPager carouselPager = (ViewPager) findViewById(R.id.carousel_pager);
+        // This is used to communicate between the pager and header, it
+        // registers itself with both
+        new CarouselPagerAdapter(carouselPager, carousel);
+        carouselPager.setAdapter(pagerAdapter);
+
+        mDriver = new StressDriver(carousel, carouselPager, pagerAdapter, iterations, new File(
+                getResultsDir(), "stress_" + System.currentTimeMillis() + ".csv"));
+        mDriver.setOnFinishedListener(this);
+        carousel.postDelayed(new Runnable() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void run() {
+                if (!isFinishing()) {
+                    mDriver.start();
+                }
+            }
+        }, START_DELAY);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mDriver.stop();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStressFinished(File output) {
+        final String message = (output != null ? "Frame stats written to " + output
+                : "Couldn't write the frame stats") + ", steps over budget: "
+                + mDriver.getBudgetViolationCount();
+        Log.i(TAG, message);
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+    }
+
+    /**
+     * Decodes the given artwork scaled to the given width
+     */
+    private Bitmap decodeArtwork(int resId, int width) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        final Bitmap source = BitmapFactory.decodeResource(getResources(), resId, options);
+        final int height = Math.round(width * source.getHeight() / (float) source.getWidth());
+        final Bitmap artwork = Bitmap.createScaledBitmap(source, width, height, true);
+        if (artwork != source) {
+            source.recycle();
+        }
+        return artwork;
+    }
+
+    /**
+     * @return The directory the results are written to, on external storage
+     *         when available so they can be pulled with adb
+     */
+    @TargetApi(Build.VERSION_CODES.FROYO)
+    private File getResultsDir() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
+            final File dir = getExternalFilesDir(null);
+            if (dir != null) {
+                return dir;
+            }
+        }
+        return getFilesDir();
+    }
+}
@@ -0,0 +1,554 @@
+/*
+ * Copyright (C) 2013 Andrew Neal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarouseldemo;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.ListFragment;
+import android.support.v4.view.ViewPager;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.widget.ListView;
+
+import com.android.tabcarousel.CarouselContainer;
+import com.android.tabcarousel.CarouselMetrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Replays the same interactions with the carousel a number of times, so runs
+ * can be compared across library versions: it flings the list of the current
+ * page down and back up, drags the carousel and switches to the next tab.
+ * The duration of every frame is recorded on Jelly Bean and up and written to
+ * a file, together with the carousel metrics, once the script has finished.
+ * <p>
+ * Each step is also checked against a budget of carousel measure, layout and
+ * fake drag passes, and the objects the UI thread allocates during each step
+ * are counted. Steps over budget are listed in the results and counted by
+ * {@link #getBudgetViolationCount()}.
+ */
+public class StressDriver implements Runnable {
+
+    /**
+     * How long a list fling takes
+     */
+    private static final int FLING_DURATION = 1500;
+
+    /**
+     * How long to wait after each step for the UI to settle
+     */
+    private static final int SETTLE_DELAY = 500;
+
+    /**
+     * Number of moves of a carousel drag, one per frame
+     */
+    private static final int DRAG_MOVES = 30;
+
+    /**
+     * Time between two moves of a carousel drag
+     */
+    private static final int DRAG_MOVE_DELAY = 16;
+
+    /**
+     * The most frames recorded, ten minutes at 60 fps
+     */
+    private static final int MAX_FRAMES = 60 * 60 * 10;
+
+    /**
+     * Steps of one iteration
+     */
+    private static final int STEP_FLING_DOWN = 0;
+
+    private static final int STEP_FLING_UP = 1;
+
+    private static final int STEP_DRAG = 2;
+
+    private static final int STEP_SWITCH_TAB = 3;
+
+    private static final int STEP_COUNT = 4;
+
+    /**
+     * Names of the steps, used in the results
+     */
+    private static final String[] STEP_NAMES = {
+            "fling_down", "fling_up", "drag", "switch_tab"
+    };
+
+    /**
+     * No limit
+     */
+    private static final int UNLIMITED = -1;
+
+    /**
+     * The most times each carousel event may happen during one step, by step
+     * then by event. Moving the header with the list never lays the carousel
+     * out; selecting a tab shows its color strip, which costs one measure and
+     * layout of the carousel and one of its parent.
+     */
+    private static final int[][] STEP_BUDGETS = new int[STEP_COUNT][];
+
+    static {
+        for (int i = 0; i < STEP_COUNT; i++) {
+            STEP_BUDGETS[i] = new int[CarouselMetrics.EVENT_COUNT];
+            Arrays.fill(STEP_BUDGETS[i], UNLIMITED);
+        }
+        STEP_BUDGETS[STEP_FLING_DOWN][CarouselMetrics.EVENT_MEASURE] = 0;
+        STEP_BUDGETS[STEP_FLING_DOWN][CarouselMetrics.EVENT_LAYOUT] = 0;
+        STEP_BUDGETS[STEP_FLING_UP][CarouselMetrics.EVENT_MEASURE] = 0;
+        STEP_BUDGETS[STEP_FLING_UP][CarouselMetrics.EVENT_LAYOUT] = 0;
+        STEP_BUDGETS[STEP_DRAG][CarouselMetrics.EVENT_MEASURE] = 2;
+        STEP_BUDGETS[STEP_DRAG][CarouselMetrics.EVENT_LAYOUT] = 2;
+        STEP_BUDGETS[STEP_DRAG][CarouselMetrics.EVENT_FAKE_DRAG_BEGIN] = 1;
+        STEP_BUDGETS[STEP_DRAG][CarouselMetrics.EVENT_FAKE_DRAG_END] = 1;
+        STEP_BUDGETS[STEP_SWITCH_TAB][CarouselMetrics.EVENT_MEASURE] = 2;
+        STEP_BUDGETS[STEP_SWITCH_TAB][CarouselMetrics.EVENT_LAYOUT] = 2;
+    }
+
+    private final Handler mHandler = new Handler();
+
+    private final CarouselContainer mCarousel;
+
+    private final ViewPager mPager;
+
+    private final PagerAdapter mPagerAdapter;
+
+    /**
+     * The file the results are written to
+     */
+    private final File mOutput;
+
+    /**
+     * Number of times the script is replayed
+     */
+    private final int mIterations;
+
+    /**
+     * Records frame durations, null before Jelly Bean
+     */
+    private final Object mFrameRecorder;
+
+    /**
+     * Notified once the results are written
+     */
+    private OnFinishedListener mListener;
+
+    private int mIteration;
+
+    private int mStep;
+
+    /**
+     * The number of moves of the current carousel drag already sent, or -1
+     * when not dragging
+     */
+    private int mDragMove = -1;
+
+    /**
+     * The down time of the current carousel drag
+     */
+    private long mDragDownTime;
+
+    private boolean mRunning;
+
+    /**
+     * The step being measured, or -1
+     */
+    private int mMeasuredStep = -1;
+
+    /**
+     * The carousel metrics when the measured step started and ended
+     */
+    private final CarouselMetrics.Snapshot mStepStart = new CarouselMetrics.Snapshot(),
+            mStepEnd = new CarouselMetrics.Snapshot();
+
+    /**
+     * The objects allocated by the UI thread when the measured step started
+     */
+    private int mStepAllocStart;
+
+    /**
+     * The most objects allocated during a single run of each step
+     */
+    private final int[] mMaxStepAllocs = new int[STEP_COUNT];
+
+    /**
+     * Describes every step that went over budget
+     */
+    private final StringBuilder mViolations = new StringBuilder();
+
+    private int mViolationCount;
+
+    /**
+     * Constructor of <code>StressDriver</code>
+     *
+     * @param carousel The {@link CarouselContainer} to drag
+     * @param pager The {@link ViewPager} showing the pages
+     * @param pagerAdapter The {@link PagerAdapter} holding the list pages
+     * @param iterations The number of times the script is replayed
+     * @param output The file the results are written to
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public StressDriver(CarouselContainer carousel, ViewPager pager, PagerAdapter pagerAdapter,
+            int iterations, File output) {
+        mCarousel = carousel;
+        mPager = pager;
+        mPagerAdapter = pagerAdapter;
+        mIterations = iterations;
+        mOutput = output;
+        mFrameRecorder = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                ? new FrameRecorder() : null;
+    }
+
+    /**
+     * Set the given {@link OnFinishedListener} to find out when the results
+     * are written
+     */
+    public void setOnFinishedListener(OnFinishedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return The number of steps that went over budget during the last run
+     */
+    public int getBudgetViolationCount() {
+        return mViolationCount;
+    }
+
+    /**
+     * Starts replaying the script
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mIteration = 0;
+        mStep = STEP_FLING_DOWN;
+        mMeasuredStep = -1;
+        mViolationCount = 0;
+        mViolations.setLength(0);
+        Arrays.fill(mMaxStepAllocs, 0);
+        if (mCarousel.getMetrics() != null) {
+            mCarousel.getMetrics().reset();
+        }
+        Debug.startAllocCounting();
+        if (mFrameRecorder != null) {
+            ((FrameRecorder) mFrameRecorder).start();
+        }
+        mHandler.post(this);
+    }
+
+    /**
+     * Stops the script without writing the results
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void stop() {
+        mRunning = false;
+        mHandler.removeCallbacks(this);
+        Debug.stopAllocCounting();
+        if (mFrameRecorder != null) {
+            ((FrameRecorder) mFrameRecorder).stop();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        if (!mRunning) {
+            return;
+        }
+        if (mDragMove >= 0) {
+            drag();
+            return;
+        }
+        // The previous step has settled
+        endStep();
+        if (mIteration >= mIterations) {
+            finish();
+            return;
+        }
+
+        final int step = mStep;
+        mStep = (mStep + 1) % STEP_COUNT;
+        if (mStep == 0) {
+            mIteration++;
+        }
+        final boolean hasTabs = mPagerAdapter.getCount() > 1;
+        beginStep(step);
+        switch (step) {
+            case STEP_FLING_DOWN:
+                fling(true);
+                return;
+            case STEP_FLING_UP:
+                fling(false);
+                return;
+            case STEP_DRAG:
+                if (hasTabs) {
+                    mDragMove = 0;
+                    drag();
+                    return;
+                }
+                break;
+            case STEP_SWITCH_TAB:
+                if (hasTabs) {
+                    mPager.setCurrentItem((mPager.getCurrentItem() + 1) % mPagerAdapter.getCount(),
+                            true);
+                }
+                break;
+            default:
+                break;
+        }
+        mHandler.postDelayed(this, SETTLE_DELAY);
+    }
+
+    /**
+     * Starts measuring a step
+     */
+    private void beginStep(int step) {
+        mMeasuredStep = step;
+        if (mCarousel.getMetrics() != null) {
+            mCarousel.getMetrics().getSnapshot(mStepStart);
+        }
+        mStepAllocStart = Debug.getThreadAllocCount();
+    }
+
+    /**
+     * Checks the step being measured against its budget
+     */
+    private void endStep() {
+        final int step = mMeasuredStep;
+        if (step < 0) {
+            return;
+        }
+        mMeasuredStep = -1;
+        final int allocs = Debug.getThreadAllocCount() - mStepAllocStart;
+        mMaxStepAllocs[step] = Math.max(mMaxStepAllocs[step], allocs);
+        final CarouselMetrics metrics = mCarousel.getMetrics();
+        if (metrics == null) {
+            return;
+        }
+        metrics.getSnapshot(mStepEnd);
+        for (int i = 0; i < CarouselMetrics.EVENT_COUNT; i++) {
+            final int budget = STEP_BUDGETS[step][i];
+            final long count = mStepEnd.getCount(i) - mStepStart.getCount(i);
+            if (budget != UNLIMITED && count > budget) {
+                mViolationCount++;
+                mViolations.append("# over_budget iteration ").append(mIteration).append(' ')
+                        .append(STEP_NAMES[step]).append(' ')
+                        .append(CarouselMetrics.getEventName(i)).append(" count ").append(count)
+                        .append(" budget ").append(budget).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Flings the list of the current page and schedules the next step
+     *
+     * @param down True to scroll down, false to scroll back up
+     */
+    @TargetApi(Build.VERSION_CODES.FROYO)
+    private void fling(boolean down) {
+        final ListView listView = getCurrentListView();
+        if (listView == null) {
+            mHandler.postDelayed(this, SETTLE_DELAY);
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
+            final int distance = listView.getHeight() * 20;
+            listView.smoothScrollBy(down ? distance : -distance, FLING_DURATION);
+        } else {
+            listView.setSelection(down ? listView.getCount() / 2 : 0);
+        }
+        mHandler.postDelayed(this, FLING_DURATION + SETTLE_DELAY);
+    }
+
+    /**
+     * Sends the next touch event of a horizontal drag across the carousel
+     */
+    private void drag() {
+        final float y = mCarousel.getHeight() / 2f;
+        final float startX = mCarousel.getWidth() * 0.75f;
+        final float x = startX - mCarousel.getWidth() * 0.5f * mDragMove / DRAG_MOVES;
+        final long now = SystemClock.uptimeMillis();
+        final int action;
+        if (mDragMove == 0) {
+            mDragDownTime = now;
+            action = MotionEvent.ACTION_DOWN;
+        } else if (mDragMove < DRAG_MOVES) {
+            action = MotionEvent.ACTION_MOVE;
+        } else {
+            action = MotionEvent.ACTION_UP;
+        }
+        final MotionEvent event = MotionEvent.obtain(mDragDownTime, now, action,
+                x, y, 0);
+        mCarousel.dispatchTouchEvent(event);
+        event.recycle();
+
+        if (action == MotionEvent.ACTION_UP) {
+            mDragMove = -1;
+            mHandler.postDelayed(this, SETTLE_DELAY);
+        } else {
+            mDragMove++;
+            mHandler.postDelayed(this, DRAG_MOVE_DELAY);
+        }
+    }
+
+    /**
+     * @return The {@link ListView} of the current page, or null
+     */
+    private ListView getCurrentListView() {
+        final Fragment fragment = mPagerAdapter.getFragment(mPager.getCurrentItem());
+        if (fragment instanceof ListFragment && fragment.getView() != null) {
+            return ((ListFragment) fragment).getListView();
+        }
+        return null;
+    }
+
+    /**
+     * Stops recording and writes the results
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void finish() {
+        stop();
+        boolean written = false;
+        PrintWriter writer = null;
+        try {
+            writer = new PrintWriter(new FileWriter(mOutput));
+            writer.println("# iterations " + mIterations);
+            writer.println("# startup " + mCarousel.getStartupTimeline());
+            for (int i = 0; i < STEP_COUNT; i++) {
+                writer.println("# " + STEP_NAMES[i] + " max_allocs " + mMaxStepAllocs[i]);
+            }
+            writer.println("# over_budget_steps " + mViolationCount);
+            writer.print(mViolations);
+            final CarouselMetrics metrics = mCarousel.getMetrics();
+            if (metrics != null) {
+                final CarouselMetrics.Snapshot snapshot = new CarouselMetrics.Snapshot();
+                metrics.getSnapshot(snapshot);
+                for (int i = 0; i < CarouselMetrics.EVENT_COUNT; i++) {
+                    writer.println("# " + CarouselMetrics.getEventName(i) + " count "
+                            + snapshot.getCount(i) + " total_us "
+                            + snapshot.getTotalDurationNanos(i) / 1000);
+                }
+            }
+            if (mFrameRecorder != null) {
+                ((FrameRecorder) mFrameRecorder).write(writer);
+            } else {
+                writer.println("# frame timing requires Jelly Bean");
+            }
+            written = !writer.checkError();
+        } catch (final IOException e) {
+            // Reported to the listener below
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        if (mListener != null) {
+            mListener.onStressFinished(written ? mOutput : null);
+        }
+    }
+
+    /**
+     * Records the time between consecutive frames in a preallocated array
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class FrameRecorder implements Choreographer.FrameCallback {
+
+        /**
+         * Frame durations in microseconds
+         */
+        private final int[] mFrames = new int[MAX_FRAMES];
+
+        private int mFrameCount;
+
+        private long mLastFrameTime;
+
+        private boolean mRecording;
+
+        void start() {
+            mFrameCount = 0;
+            mLastFrameTime = 0;
+            mRecording = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mRecording = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRecording) {
+                return;
+            }
+            if (mLastFrameTime != 0 && mFrameCount < MAX_FRAMES) {
+                mFrames[mFrameCount++] = (int) ((frameTimeNanos - mLastFrameTime) / 1000);
+            }
+            mLastFrameTime = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        /**
+         * Writes a summary followed by one frame duration per line
+         */
+        void write(PrintWriter writer) {
+            int janky = 0;
+            long total = 0;
+            for (int i = 0; i < mFrameCount; i++) {
+                total += mFrames[i];
+                if (mFrames[i] > 17000) {
+                    janky++;
+                }
+            }
+            writer.println("# frames " + mFrameCount + " janky " + janky + " mean_us "
+                    + (mFrameCount > 0 ? total / mFrameCount : 0));
+            writer.println("frame,duration_us");
+            for (int i = 0; i < mFrameCount; i++) {
+                writer.print(i);
+                writer.print(',');
+                writer.println(mFrames[i]);
+            }
+        }
+    }
+
+    /**
+     * Interface invoked when the script has finished
+     */
+    public interface OnFinishedListener {
+
+        /**
+         * @param output The file holding the results, or null if they couldn't
+         *            be written
+         */
+        public void onStressFinished(File output);
+    }
+}
@@ -77,6 +77,10 @@ public class BackScrollManager implements OnScrollListener {
         // If the FIRST item is not visible on the screen, then the carousel
         // must be pinned
         // at the top of the screen.
+        final CarouselMetrics metrics = mCarousel.getMetrics();
+        if (metrics != null) {
+            metrics.count(CarouselMetrics.EVENT_HEADER_MOVE);
+        }
         if (firstVisibleItem != 0) {
             mCarousel.moveToYCoordinate(mPageIndex, -mCarousel.getAllowedVerticalScrollLength());
             return;
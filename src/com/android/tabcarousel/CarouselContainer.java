@@ -17,15 +17,27 @@
 package com.android.tabcarousel;
 
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.util.TypedValue;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnTouchListener;
+import android.view.ViewStub;
 import android.view.animation.AnimationUtils;
 import android.view.animation.Interpolator;
 import android.widget.HorizontalScrollView;
@@ -35,6 +47,9 @@ import android.widget.TextView;
 import com.nineoldandroids.animation.Animator;
 import com.nineoldandroids.animation.Animator.AnimatorListener;
 import com.nineoldandroids.animation.ObjectAnimator;
+import com.nineoldandroids.animation.ValueAnimator;
+import com.nineoldandroids.animation.ValueAnimator.AnimatorUpdateListener;
+import com.nineoldandroids.view.ViewHelper;
 
 import java.lang.ref.WeakReference;
 
@@ -59,14 +74,30 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
     public static final int TAB_INDEX_SECOND = 1;
 
     /**
-     * Y coordinate of the tab at the given index was selected
+     * Alpha layer to be set on the lable view
      */
-    private static final float[] Y_COORDINATE = new float[TAB_COUNT];
+    private static final float MAX_ALPHA = 0.6f;
 
     /**
-     * Alpha layer to be set on the lable view
+     * How long the carousel must stay still before a snapshot is saved
      */
-    private static final float MAX_ALPHA = 0.6f;
+    private static final long SNAPSHOT_IDLE_DELAY = 1000;
+
+    /**
+     * How long a loaded snapshot is drawn at most while the tab images are
+     * still loading
+     */
+    private static final long SNAPSHOT_TIMEOUT = 2000;
+
+    /**
+     * Live tab content is throttled when less of its tab is on screen
+     */
+    private static final float LIVE_CONTENT_MIN_VISIBLE_FRACTION = 0.5f;
+
+    /**
+     * Live tab content is throttled when its tab is dimmed more
+     */
+    private static final float LIVE_CONTENT_MAX_DIM = MAX_ALPHA / 2;
 
     /**
      * Tab width as defined as a fraction of the screen width
@@ -93,26 +124,149 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      */
     private boolean mTabCarouselIsAnimating;
 
+    /**
+     * Y coordinate of the tab at the given index was selected
+     */
+    private final float[] mYCoordinates = new float[TAB_COUNT];
+
+    /**
+     * The last animator started by {@link #restoreYCoordinate(int, int)}
+     */
+    private ObjectAnimator mYAnimator;
+
     /**
      * Indicates that both tabs are to be used if true, false if only one
      */
     private boolean mDualTabs = true;
 
     /**
-     * Interface invoked when the user interacts with the carousel
+     * Used instead of allocating empty listener arrays
+     */
+    private static final OnCarouselListener[] NO_CAROUSEL_LISTENERS = new OnCarouselListener[0];
+
+    private static final OnCarouselProgressListener[] NO_PROGRESS_LISTENERS = new OnCarouselProgressListener[0];
+
+    /**
+     * Interface set with {@link #setListener(OnCarouselListener)}
      */
     private OnCarouselListener mCarouselListener;
 
+    /**
+     * Interfaces invoked when the user interacts with the carousel. The array
+     * is replaced rather than modified, so events are dispatched without
+     * copying or allocating.
+     */
+    private OnCarouselListener[] mCarouselListeners = NO_CAROUSEL_LISTENERS;
+
+    /**
+     * Interfaces invoked when the normalized position of the carousel changes,
+     * replaced like {@link #mCarouselListeners}
+     */
+    private OnCarouselProgressListener[] mProgressListeners = NO_PROGRESS_LISTENERS;
+
+    /**
+     * The progress last sent to {@link #mProgressListeners}
+     */
+    private float mLastTabProgress = -1, mLastCollapseProgress = -1;
+
+    /**
+     * Number of {@link #beginUpdate()} calls not committed yet
+     */
+    private int mUpdateDepth;
+
+    /**
+     * Changes gathered since {@link #beginUpdate()}, by tab index
+     */
+    private final PendingTabUpdate[] mPendingTabUpdates = {
+            new PendingTabUpdate(), new PendingTabUpdate()
+    };
+
+    /**
+     * The tab to select on commit, or -1
+     */
+    private int mPendingCurrentTab = -1;
+
+    /**
+     * True if {@link #mPendingDualTabs} should be applied on commit
+     */
+    private boolean mHasPendingDualTabs;
+
+    private boolean mPendingDualTabs;
+
+    /**
+     * True while a commit is applied, to hold back layout requests
+     */
+    private boolean mBlockLayoutRequests;
+
+    /**
+     * True if a layout was requested while {@link #mBlockLayoutRequests}
+     */
+    private boolean mLayoutRequestedDuringUpdate;
+
+    /**
+     * Used to reach the UI thread from the threads posting tab updates
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Guards the posted tab updates
+     */
+    private final Object mPostedUpdatesLock = new Object();
+
+    /**
+     * The latest labels posted from any thread, by tab index
+     */
+    private final String[] mPostedLabels = new String[2];
+
+    private final boolean[] mHasPostedLabels = new boolean[2];
+
+    /**
+     * The latest bitmaps posted from any thread, by tab index
+     */
+    private final Bitmap[] mPostedBitmaps = new Bitmap[2];
+
+    private final boolean[] mHasPostedBitmaps = new boolean[2];
+
+    /**
+     * True once the posted updates are scheduled to be applied
+     */
+    private boolean mPostedUpdatesScheduled;
+
+    /**
+     * Copies of the posted updates taken on the UI thread, so they're applied
+     * outside the lock without allocating
+     */
+    private final String[] mApplyingLabels = new String[2];
+
+    private final boolean[] mApplyingHasLabels = new boolean[2];
+
+    private final Bitmap[] mApplyingBitmaps = new Bitmap[2];
+
+    private final boolean[] mApplyingHasBitmaps = new boolean[2];
+
+    /**
+     * Receives posted bitmaps replaced before they were shown, may be null.
+     * Guarded by {@code #mPostedUpdatesLock}.
+     */
+    private OnBitmapSupersededListener mBitmapSupersededListener;
+
     /**
      * The first tab in the carousel
      */
     private CarouselTab mFirstTab;
 
     /**
-     * The second tab in the carousel
+     * The second tab in the carousel, null until {@code #mSecondTabStub} is
+     * inflated
      */
     private CarouselTab mSecondTab;
 
+    /**
+     * Inflates the second tab the first time both tabs are used, null once it
+     * has been
+     */
+    private ViewStub mSecondTabStub;
+
     /**
      * Allowed horizontal scroll length
      */
@@ -139,9 +293,165 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
     private float mScrollScaleFactor = 1.0f;
 
     /**
-     * True to scroll to the pager's current position, false otherwise
+     * True to scroll to the current tab after the next layout. Set until the
+     * first layout, since the carousel can't scroll before it's measured and a
+     * tab may have been selected or restored by then.
+     */
+    private boolean mScrollToCurrentTab = true;
+
+    /**
+     * Loads the tab images in the background, may be null
+     */
+    private TabImageLoader mImageLoader;
+
+    /**
+     * Lays the tab labels out in the background, may be null
+     */
+    private TabLabelLayoutCache mLabelLayoutCache;
+
+    /**
+     * Tints the tabs after their images, may be null
+     */
+    private TabColorExtractor mColorExtractor;
+
+    /**
+     * Blurs the images behind the tab labels, may be null
+     */
+    private TabScrimBlurrer mScrimBlurrer;
+
+    /**
+     * The size of the tab images as computed in {@code #onMeasure(int, int)}
+     */
+    private int mTabImageWidth, mTabImageHeight;
+
+    /**
+     * Milliseconds between requesting a tab image and the first tab showing
+     * content, or -1 if no tab has shown a requested image yet
+     */
+    private long mTimeToFirstMeaningfulTab = -1;
+
+    /**
+     * Notified when the first tab shows a requested image
+     */
+    private OnFirstMeaningfulTabListener mFirstMeaningfulTabListener;
+
+    /**
+     * Releases the tab images when the system needs memory, null before Ice
+     * Cream Sandwich
+     */
+    private Object mTrimMemoryCallbacks;
+
+    /**
+     * How much work the carousel may do to look its best
+     */
+    private CarouselPerformanceProfile mPerformanceProfile;
+
+    /**
+     * True while the carousel is pinned so only the labels are visible
+     */
+    private boolean mCollapsed;
+
+    /**
+     * The visibility of the window, {@link #GONE} while detached
+     */
+    private int mWindowVisibility = GONE;
+
+    /**
+     * Time between two automatic tab changes, or 0 if autoplay is off
+     */
+    private long mAutoplayIntervalNanos;
+
+    /**
+     * When the next automatic tab change is due, while autoplay runs
+     */
+    private long mAutoplayDeadlineNanos;
+
+    /**
+     * Time left until the next automatic tab change, while autoplay is
+     * suspended
+     */
+    private long mAutoplayRemainingNanos;
+
+    /**
+     * True while a tab change is scheduled
      */
-    private boolean mScrollToCurrentTab = false;
+    private boolean mAutoplayRunning;
+
+    /**
+     * True while the carousel is touched
+     */
+    private boolean mTouching;
+
+    /**
+     * True once a {@link CarouselPagerAdapter} connects a {@code ViewPager}
+     * to the carousel
+     */
+    private boolean mPagerConnected;
+
+    /**
+     * True while the {@code ViewPager} connected with a
+     * {@link CarouselPagerAdapter} is dragged
+     */
+    private boolean mPagerDragging;
+
+    /**
+     * The {@code Choreographer.FrameCallback} changing tabs, only created
+     * from Jelly Bean
+     */
+    private Object mAutoplayFrameCallback;
+
+    /**
+     * Drawn until the carousel is fully drawn and saved when it's idle, may
+     * be null
+     */
+    private CarouselSnapshot mSnapshot;
+
+    /**
+     * How fast the tab images move relative to the carousel as it collapses,
+     * 0 if parallax is off
+     */
+    private float mParallaxFactor;
+
+    /**
+     * The collapse progress last applied to the tab images, or -1
+     */
+    private float mLastParallaxProgress = -1;
+
+    /**
+     * Where {@code #mSnapshot} is drawn
+     */
+    private final Rect mSnapshotBounds = new Rect();
+
+    /**
+     * Used to draw {@code #mSnapshot}
+     */
+    private final Paint mSnapshotPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * Milliseconds to wait once collapsed before releasing the tab images, or
+     * -1 to keep them
+     */
+    private long mCollapsedImageReleaseDelay = -1;
+
+    /**
+     * Records the hot paths, null unless enabled
+     */
+    private CarouselMetrics mMetrics;
+
+    /**
+     * Records recent events for bug reports, null unless enabled
+     */
+    private CarouselTrace mTrace;
+
+    /**
+     * Timestamps of the phases of bringing up the carousel
+     */
+    private final CarouselStartupTimeline mStartupTimeline = new CarouselStartupTimeline();
+
+    /**
+     * Notified once the carousel is drawn with every tab image
+     */
+    private OnFullyDrawnListener mFullyDrawnListener;
 
     /**
      * @param context The {@link Context} to use
@@ -149,6 +459,7 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      */
     public CarouselContainer(Context context, AttributeSet attrs) {
         super(context, attrs);
+        mStartupTimeline.mark(CarouselStartupTimeline.PHASE_CONSTRUCTION);
         // Add the onTouchListener
         setOnTouchListener(this);
         // Retrieve the carousel dimensions
@@ -161,6 +472,9 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
         mTabDisplayLabelHeight = res.getDimensionPixelSize(R.dimen.carousel_label_height);
         // Height of the image shadow
         mTabShadowHeight = res.getDimensionPixelSize(R.dimen.carousel_image_shadow_height);
+        mStartupTimeline.mark(CarouselStartupTimeline.PHASE_RESOURCES_RESOLVED);
+        // Trade quality for smoothness on low-end devices
+        mPerformanceProfile = CarouselPerformanceProfile.forDevice(context);
     }
 
     /**
@@ -171,9 +485,59 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
         super.onFinishInflate();
         mFirstTab = (CarouselTab) findViewById(R.id.carousel_tab_one);
         mFirstTab.setOverlayOnClickListener(new TabClickListener(this, TAB_INDEX_FIRST));
-        mSecondTab = (CarouselTab) findViewById(R.id.carousel_tab_two);
-        mSecondTab.setOverlayOnClickListener(new TabClickListener(this, TAB_INDEX_SECOND));
-        mSecondTab.setAlphaLayerValue(MAX_ALPHA);
+        mFirstTab.setOnTabImageListener(mTabImageListener);
+        // The second tab is inflated once the carousel is attached, by which
+        // time setUsesDualTabs(false) has been called if it only uses one
+        mSecondTabStub = (ViewStub) findViewById(R.id.carousel_tab_two_stub);
+        mStartupTimeline.mark(CarouselStartupTimeline.PHASE_FINISH_INFLATE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mDualTabs) {
+            ensureSecondTab();
+        }
+        if (Utils.hasIceCreamSandwich()) {
+            final TrimMemoryCallbacks callbacks = new TrimMemoryCallbacks(this);
+            getContext().getApplicationContext().registerComponentCallbacks(callbacks);
+            mTrimMemoryCallbacks = callbacks;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mTrimMemoryCallbacks != null) {
+            getContext().getApplicationContext().unregisterComponentCallbacks(
+                    (ComponentCallbacks2) mTrimMemoryCallbacks);
+            mTrimMemoryCallbacks = null;
+        }
+        removeCallbacks(mReleaseImagesRunnable);
+        removeCallbacks(mCaptureSnapshotRunnable);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        mWindowVisibility = visibility;
+        if (visibility == VISIBLE) {
+            // Lazily decode the images released while in the background
+            restoreImages();
+        }
+        updateLiveContentRates();
+        updateAutoplay();
     }
 
     /**
@@ -181,6 +545,8 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      */
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        CarouselTrace.beginSection("CarouselContainer#onMeasure");
+        final long start = mMetrics != null ? mMetrics.begin() : 0;
         final int screenWidth = MeasureSpec.getSize(widthMeasureSpec);
         // Compute the width of a tab as a fraction of the screen width
         final int tabWidth = Math.round(mTabWidthScreenFraction * screenWidth);
@@ -224,8 +590,27 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
         }
 
         mAllowedVerticalScrollLength = tabHeight - mTabDisplayLabelHeight - mTabShadowHeight;
+
+        // Let the tabs decode their images at exactly the size they are shown
+        mTabImageWidth = mDualTabs ? tabWidth : screenWidth;
+        mTabImageHeight = tabHeight - mTabShadowHeight;
+        if (mFirstTab != null) {
+            mFirstTab.setImageSize(mTabImageWidth, mTabImageHeight,
+                    mAllowedVerticalScrollLength * mParallaxFactor);
+            mFirstTab.setLabelWidth(mTabImageWidth);
+        }
+        if (mSecondTab != null) {
+            mSecondTab.setImageSize(mTabImageWidth, mTabImageHeight,
+                    mAllowedVerticalScrollLength * mParallaxFactor);
+            mSecondTab.setLabelWidth(mTabImageWidth);
+        }
         setMeasuredDimension(resolveSize(screenWidth, widthMeasureSpec),
                 resolveSize(tabHeight, heightMeasureSpec));
+        if (mMetrics != null) {
+            mMetrics.end(CarouselMetrics.EVENT_MEASURE, start);
+        }
+        mStartupTimeline.mark(CarouselStartupTimeline.PHASE_FIRST_MEASURE);
+        CarouselTrace.endSection();
     }
 
     /**
@@ -234,7 +619,14 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
     @SuppressLint("DrawAllocation")
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        CarouselTrace.beginSection("CarouselContainer#onLayout");
+        final long start = mMetrics != null ? mMetrics.begin() : 0;
         super.onLayout(changed, l, t, r, b);
+        if (mMetrics != null) {
+            mMetrics.end(CarouselMetrics.EVENT_LAYOUT, start);
+        }
+        mStartupTimeline.mark(CarouselStartupTimeline.PHASE_FIRST_LAYOUT);
+        CarouselTrace.endSection();
         if (!mScrollToCurrentTab) {
             return;
         }
@@ -244,6 +636,7 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
             public void run() {
                 scrollTo(mCurrentTab == TAB_INDEX_FIRST ? 0 : mAllowedHorizontalScrollLength, 0);
                 updateAlphaLayers();
+                mStartupTimeline.mark(CarouselStartupTimeline.PHASE_POST_LAYOUT_SCROLL);
             }
         });
     }
@@ -264,6 +657,11 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
         if (mLastScrollPosition == x) {
             return;
         }
+        CarouselTrace.beginSection("CarouselContainer#onScrollChanged");
+        final long start = mMetrics != null ? mMetrics.begin() : 0;
+        if (mTrace != null) {
+            mTrace.record(CarouselTrace.EVENT_SCROLL, x - oldX);
+        }
 
         // Since we never completely scroll the about/updates tabs off-screen,
         // the draggable range is less than the width of the carousel. Our
@@ -272,10 +670,53 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
         // width, not the same number of pixels that we scrolled.
         final int scaledL = (int) (x * mScrollScaleFactor);
         final int oldScaledL = (int) (oldX * mScrollScaleFactor);
-        mCarouselListener.onCarouselScrollChanged(scaledL, y, oldScaledL, oldY);
+        final OnCarouselListener[] listeners = mCarouselListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onCarouselScrollChanged(scaledL, y, oldScaledL, oldY);
+        }
+        dispatchProgress();
 
         mLastScrollPosition = x;
-        updateAlphaLayers();
+        if (!mPerformanceProfile.isFixedDimOverlay()) {
+            updateAlphaLayers();
+        } else {
+            updateLiveContentRates();
+        }
+        if (mMetrics != null) {
+            mMetrics.end(CarouselMetrics.EVENT_SCROLL_CHANGED, start);
+        }
+        CarouselTrace.endSection();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        final boolean starting = !mStartupTimeline
+                .hasReached(CarouselStartupTimeline.PHASE_FULLY_DRAWN);
+        if (starting) {
+            mStartupTimeline.mark(CarouselStartupTimeline.PHASE_FIRST_DRAW);
+            if (isImagePending() && drawSnapshot(canvas)) {
+                return;
+            }
+        }
+        if (!mCollapsed) {
+            super.dispatchDraw(canvas);
+        } else {
+            // Only the labels and the shadow are on screen. The dim overlays
+            // lie entirely above the clip and are skipped; the images still
+            // draw, but only the pixels behind the labels are filled.
+            final int saveCount = canvas.save();
+            canvas.clipRect(getScrollX(), mAllowedVerticalScrollLength,
+                    getScrollX() + getWidth(), getHeight());
+            super.dispatchDraw(canvas);
+            canvas.restoreToCount(saveCount);
+        }
+        if (starting) {
+            // Only now has the real content been drawn
+            checkFullyDrawn();
+        }
     }
 
     /**
@@ -285,7 +726,7 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
     public boolean onInterceptTouchEvent(MotionEvent ev) {
         final boolean interceptTouch = super.onInterceptTouchEvent(ev);
         if (interceptTouch) {
-            mCarouselListener.onTouchDown();
+            dispatchTouchDown();
         }
         return interceptTouch;
     }
@@ -295,12 +736,29 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      */
     @Override
     public boolean onTouch(View v, MotionEvent event) {
-        switch (event.getAction()) {
+        final int action = event.getAction();
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            // Give the user a full interval to look at the tab they chose
+            mTouching = false;
+            mAutoplayRemainingNanos = mAutoplayIntervalNanos;
+            updateAutoplay();
+            scheduleSnapshot();
+        }
+        switch (action) {
             case MotionEvent.ACTION_DOWN:
-                mCarouselListener.onTouchDown();
+                if (mTrace != null) {
+                    mTrace.record(CarouselTrace.EVENT_TOUCH_DOWN, (int) event.getX());
+                }
+                dispatchTouchDown();
                 return true;
             case MotionEvent.ACTION_UP:
-                mCarouselListener.onTouchUp();
+                if (mTrace != null) {
+                    mTrace.record(CarouselTrace.EVENT_TOUCH_UP, (int) event.getX());
+                }
+                final OnCarouselListener[] listeners = mCarouselListeners;
+                for (int i = 0; i < listeners.length; i++) {
+                    listeners[i].onTouchUp();
+                }
                 return true;
         }
         return super.onTouchEvent(event);
@@ -314,12 +772,82 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
     }
 
     /**
-     * Reset the carousel to the start position
+     * Reset the carousel to the start position, without animating
      */
     public void reset() {
         scrollTo(0, 0);
         setCurrentTab(TAB_INDEX_FIRST);
-        moveToYCoordinate(TAB_INDEX_FIRST, 0);
+        for (int i = 0; i < TAB_COUNT; i++) {
+            mYCoordinates[i] = 0;
+        }
+        if (mYAnimator != null) {
+            mYAnimator.cancel();
+        }
+        ViewHelper.setY(this, 0);
+        updateCollapsed();
+        dispatchProgress();
+        updateParallax();
+    }
+
+    /**
+     * Returns the carousel to a clean state so it can be bound to new content,
+     * for example when it's shown in a recycled list row. In one pass and
+     * without animating or allocating, this stops any vertical animation,
+     * drops pending and posted updates, detaches every listener, clears the
+     * labels and images and resets the position. Images loaded with
+     * {@link #loadImageResource(int, int)} stay in the
+     * {@link TabImageLoader} cache, so binding the same content again is
+     * cheap.
+     * 
+     * @see CarouselContainerPool
+     */
+    public void recycle() {
+        removeCallbacks(mReleaseImagesRunnable);
+        removeCallbacks(mApplyPostedUpdatesRunnable);
+        mMainHandler.removeCallbacks(mSchedulePostedUpdatesRunnable);
+        synchronized (mPostedUpdatesLock) {
+            for (int i = 0; i < TAB_COUNT; i++) {
+                mPostedLabels[i] = null;
+                mHasPostedLabels[i] = false;
+                mPostedBitmaps[i] = null;
+                mHasPostedBitmaps[i] = false;
+            }
+            mPostedUpdatesScheduled = false;
+        }
+        mUpdateDepth = 0;
+        for (int i = 0; i < TAB_COUNT; i++) {
+            mPendingTabUpdates[i].clear();
+        }
+        mPendingCurrentTab = -1;
+        mHasPendingDualTabs = false;
+        removeCallbacks(mCaptureSnapshotRunnable);
+        removeCallbacks(mReleaseSnapshotRunnable);
+        mSnapshot = null;
+        stopAutoplay();
+        mAutoplayIntervalNanos = 0;
+        mTouching = false;
+        mPagerConnected = false;
+        mPagerDragging = false;
+
+        // Detach the listeners before moving so none of them hears about it
+        mCarouselListener = null;
+        mCarouselListeners = NO_CAROUSEL_LISTENERS;
+        mProgressListeners = NO_PROGRESS_LISTENERS;
+        mFullyDrawnListener = null;
+        mFirstMeaningfulTabListener = null;
+        synchronized (mPostedUpdatesLock) {
+            mBitmapSupersededListener = null;
+        }
+
+        mFirstTab.recycle();
+        if (mSecondTab != null) {
+            mSecondTab.recycle();
+        }
+        mTimeToFirstMeaningfulTab = -1;
+        mLastScrollPosition = Integer.MIN_VALUE;
+        mLastTabProgress = -1;
+        mLastCollapseProgress = -1;
+        reset();
     }
 
     /**
@@ -330,7 +858,7 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @param y The Y cooridinate to move to
      */
     public void storeYCoordinate(int tabIndex, float y) {
-        Y_COORDINATE[tabIndex] = y;
+        mYCoordinates[tabIndex] = y;
     }
 
     /**
@@ -344,15 +872,31 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      */
     public void restoreYCoordinate(int duration, int tabIndex) {
         final float storedYCoordinate = getStoredYCoordinateForTab(tabIndex);
+        if (!mPerformanceProfile.isAnimateYMoves()) {
+            ViewHelper.setY(this, storedYCoordinate);
+            updateCollapsed();
+            dispatchProgress();
+            updateParallax();
+            return;
+        }
+        if (!isCollapsedAt(storedYCoordinate)) {
+            // Draw everything again while expanding
+            setCollapsed(false);
+        }
 
         final Interpolator interpolator = AnimationUtils.loadInterpolator(getContext(),
                 android.R.anim.accelerate_decelerate_interpolator);
 
         final ObjectAnimator animator = ObjectAnimator.ofFloat(this, "y", storedYCoordinate);
         animator.addListener(mTabCarouselAnimatorListener);
+        animator.addUpdateListener(mTabCarouselUpdateListener);
         animator.setInterpolator(interpolator);
         animator.setDuration(duration);
         animator.start();
+        mYAnimator = animator;
+        if (mMetrics != null) {
+            mMetrics.count(CarouselMetrics.EVENT_RESTORE_ANIMATION);
+        }
     }
 
     /**
@@ -363,33 +907,326 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @param y The Y cooridinate to move to
      */
     public void moveToYCoordinate(int tabIndex, float y) {
+        if (!mTabCarouselIsAnimating && getStoredYCoordinateForTab(tabIndex) == y
+                && ViewHelper.getY(this) == y) {
+            // Already there, which is the case for every scroll of the list
+            // while the carousel is pinned
+            return;
+        }
+        CarouselTrace.beginSection("CarouselContainer#moveToYCoordinate");
+        if (mTrace != null) {
+            mTrace.record(CarouselTrace.EVENT_MOVE_Y, (int) y);
+        }
         storeYCoordinate(tabIndex, y);
         restoreYCoordinate(0, tabIndex);
+        CarouselTrace.endSection();
     }
 
     /**
-     * Used to propely call {@code #onMeasure(int, int)}
+     * Moves the tab images at a fraction of the speed of the carousel as it
+     * collapses, following the positions passed to
+     * {@link #moveToYCoordinate(int, float)}. Only the image matrix is
+     * translated, so a move costs neither a layout pass nor an allocation.
+     * The images loaded with {@link #loadImageResource(int, int)} are decoded
+     * taller by the distance they move, so they never uncover the tab and
+     * are never scaled; changing the factor decodes them again.
      * 
-     * @param yesOrNo Yes to indicate both tabs will be used in the carousel,
-     *            false to indicate only one
+     * @param factor How far the images move relative to the carousel,
+     *            between 0 and 1, or 0 to turn parallax off
      */
-    public void setUsesDualTabs(boolean yesOrNo) {
-        mDualTabs = yesOrNo;
+    public void setParallaxFactor(float factor) {
+        factor = Utils.clamp(factor, 0.0f, 1.0f);
+        if (mParallaxFactor == factor) {
+            return;
+        }
+        mParallaxFactor = factor;
+        mLastParallaxProgress = -1;
+        if (mTabImageWidth > 0) {
+            mFirstTab.setImageSize(mTabImageWidth, mTabImageHeight, mAllowedVerticalScrollLength
+                    * factor);
+            if (mSecondTab != null) {
+                mSecondTab.setImageSize(mTabImageWidth, mTabImageHeight,
+                        mAllowedVerticalScrollLength * factor);
+            }
+        }
+        updateParallax();
     }
 
     /**
-     * Set the given {@link OnCarouselListener} to handle carousel events
+     * Moves the tab images after the vertical position of the carousel
      */
-    public void setListener(OnCarouselListener carouselListener) {
-        mCarouselListener = carouselListener;
+    private void updateParallax() {
+        if (mParallaxFactor <= 0) {
+            return;
+        }
+        final float progress = getCollapseProgress();
+        if (progress == mLastParallaxProgress) {
+            return;
+        }
+        mLastParallaxProgress = progress;
+        mFirstTab.setParallaxProgress(progress);
+        if (mSecondTab != null) {
+            mSecondTab.setParallaxProgress(progress);
+        }
     }
 
     /**
-     * Updates the tab selection
+     * Used to propely call {@code #onMeasure(int, int)}
      * 
-     * @param position The index to update
+     * @param yesOrNo Yes to indicate both tabs will be used in the carousel,
+     *            false to indicate only one
+     */
+    public void setUsesDualTabs(boolean yesOrNo) {
+        if (mUpdateDepth > 0) {
+            mHasPendingDualTabs = true;
+            mPendingDualTabs = yesOrNo;
+            return;
+        }
+        if (mDualTabs == yesOrNo) {
+            return;
+        }
+        mDualTabs = yesOrNo;
+        if (mFirstTab == null) {
+            // Not inflated yet, onFinishInflate() and onAttachedToWindow()
+            // pick the mode up
+            return;
+        }
+        final boolean blockLayoutRequests = mBlockLayoutRequests;
+        mBlockLayoutRequests = true;
+        try {
+            if (yesOrNo) {
+                ensureSecondTab().setVisibility(VISIBLE);
+            } else if (mSecondTab != null) {
+                mSecondTab.setVisibility(GONE);
+            }
+        } finally {
+            mBlockLayoutRequests = blockLayoutRequests;
+        }
+        // A single pass lays out the new mode
+        requestLayout();
+        updateAutoplay();
+    }
+
+    /**
+     * Inflates the second tab if it hasn't been yet
+     * 
+     * @return The second {@link CarouselTab}
+     */
+    private CarouselTab ensureSecondTab() {
+        if (mSecondTab != null) {
+            return mSecondTab;
+        }
+        mSecondTab = (CarouselTab) mSecondTabStub.inflate();
+        mSecondTabStub = null;
+        mSecondTab.setOverlayOnClickListener(new TabClickListener(this, TAB_INDEX_SECOND));
+        mSecondTab.setOnTabImageListener(mTabImageListener);
+        mSecondTab.setMetrics(mMetrics);
+        mSecondTab.setSelected(mCurrentTab == TAB_INDEX_SECOND);
+        mSecondTab.setAlphaLayerValue(mCurrentTab == TAB_INDEX_SECOND ? 0.0f : MAX_ALPHA);
+        mSecondTab.setLabelLayoutCache(mLabelLayoutCache);
+        mSecondTab.setColorExtractor(mColorExtractor);
+        mSecondTab.setScrimBlurrer(mScrimBlurrer);
+        if (mTabImageWidth > 0) {
+            mSecondTab.setImageSize(mTabImageWidth, mTabImageHeight,
+                    mAllowedVerticalScrollLength * mParallaxFactor);
+            mSecondTab.setLabelWidth(mTabImageWidth);
+            mSecondTab.setParallaxProgress(Math.max(mLastParallaxProgress, 0.0f));
+        }
+        if (!mDualTabs) {
+            // Content was set on the second tab of a single tab carousel
+            mSecondTab.setVisibility(GONE);
+        }
+        return mSecondTab;
+    }
+
+    /**
+     * Starts gathering changes made with {@link #setLabel(int, String)}, the
+     * {@code setImage*} methods, {@link #loadImageResource(int, int)},
+     * {@link #setLiveContent(int, TabLiveContent)},
+     * {@link #setCurrentTab(int)} and {@link #setUsesDualTabs(boolean)}, so
+     * they're applied together by {@link #commit()} with a single layout
+     * pass. Of the calls changing the image of a tab, only the last one is
+     * applied. Updates can be nested; the
+     * changes are applied when the outermost one is committed.
+     */
+    public void beginUpdate() {
+        mUpdateDepth++;
+    }
+
+    /**
+     * Applies the changes gathered since {@link #beginUpdate()}. Changes to
+     * values equal to the current state are skipped.
+     */
+    public void commit() {
+        if (mUpdateDepth == 0) {
+            throw new IllegalStateException("commit() called without beginUpdate()");
+        }
+        if (--mUpdateDepth > 0) {
+            return;
+        }
+
+        mBlockLayoutRequests = true;
+        try {
+            for (int i = 0; i < mPendingTabUpdates.length; i++) {
+                mPendingTabUpdates[i].apply(this, i);
+            }
+            if (mHasPendingDualTabs) {
+                mHasPendingDualTabs = false;
+                setUsesDualTabs(mPendingDualTabs);
+            }
+            if (mPendingCurrentTab != -1) {
+                final int position = mPendingCurrentTab;
+                mPendingCurrentTab = -1;
+                if (position != mCurrentTab || !getTab(position).isSelected()) {
+                    setCurrentTab(position);
+                }
+            }
+        } finally {
+            mBlockLayoutRequests = false;
+        }
+        if (mLayoutRequestedDuringUpdate) {
+            mLayoutRequestedDuringUpdate = false;
+            requestLayout();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void requestLayout() {
+        if (mBlockLayoutRequests) {
+            // The tabs asking for a layout are flagged already, so one request
+            // once the commit is done lays them all out
+            mLayoutRequestedDuringUpdate = true;
+            return;
+        }
+        super.requestLayout();
+    }
+
+    /**
+     * Set the given {@link OnCarouselListener} to handle carousel events,
+     * replacing the one set before. Listeners added with
+     * {@link #addListener(OnCarouselListener)} are kept.
+     */
+    public void setListener(OnCarouselListener carouselListener) {
+        if (mCarouselListener != null) {
+            removeListener(mCarouselListener);
+        }
+        mCarouselListener = carouselListener;
+        if (carouselListener != null) {
+            addListener(carouselListener);
+        }
+    }
+
+    /**
+     * Adds an {@link OnCarouselListener} notified of carousel events along
+     * with the others
+     */
+    public void addListener(OnCarouselListener carouselListener) {
+        mCarouselListeners = Utils.appendElement(mCarouselListeners, carouselListener);
+    }
+
+    /**
+     * Removes an {@link OnCarouselListener} added with
+     * {@link #addListener(OnCarouselListener)}
+     */
+    public void removeListener(OnCarouselListener carouselListener) {
+        mCarouselListeners = Utils.removeElement(mCarouselListeners, carouselListener);
+    }
+
+    /**
+     * Adds an {@link OnCarouselProgressListener} notified when the carousel
+     * scrolls between its tabs or collapses
+     */
+    public void addProgressListener(OnCarouselProgressListener progressListener) {
+        mProgressListeners = Utils.appendElement(mProgressListeners, progressListener);
+    }
+
+    /**
+     * Removes an {@link OnCarouselProgressListener} added with
+     * {@link #addProgressListener(OnCarouselProgressListener)}
+     */
+    public void removeProgressListener(OnCarouselProgressListener progressListener) {
+        mProgressListeners = Utils.removeElement(mProgressListeners, progressListener);
+    }
+
+    /**
+     * @return 0 when the first tab is selected, 1 when the second tab is, in
+     *         between while scrolling
+     */
+    public float getTabProgress() {
+        if (mAllowedHorizontalScrollLength <= 0) {
+            return mCurrentTab == TAB_INDEX_FIRST ? 0.0f : 1.0f;
+        }
+        return Utils.clamp(getScrollX() / (float) mAllowedHorizontalScrollLength, 0.0f, 1.0f);
+    }
+
+    /**
+     * @return 0 when the carousel is fully expanded, 1 when only the labels
+     *         are left on screen
+     */
+    public float getCollapseProgress() {
+        if (mAllowedVerticalScrollLength <= 0) {
+            return 0.0f;
+        }
+        return Utils.clamp(-ViewHelper.getY(this) / mAllowedVerticalScrollLength, 0.0f, 1.0f);
+    }
+
+    /**
+     * Notifies every {@link OnCarouselListener} that the carousel is touched
+     */
+    private void dispatchTouchDown() {
+        mTouching = true;
+        updateAutoplay();
+        final OnCarouselListener[] listeners = mCarouselListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onTouchDown();
+        }
+    }
+
+    /**
+     * Notifies every {@link OnCarouselListener} that a tab was clicked
+     */
+    private void dispatchTabSelected(int position) {
+        final OnCarouselListener[] listeners = mCarouselListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onTabSelected(position);
+        }
+    }
+
+    /**
+     * Notifies every {@link OnCarouselProgressListener} if the normalized
+     * position of the carousel changed
+     */
+    private void dispatchProgress() {
+        final OnCarouselProgressListener[] listeners = mProgressListeners;
+        if (listeners.length == 0) {
+            return;
+        }
+        final float tabProgress = getTabProgress();
+        final float collapseProgress = getCollapseProgress();
+        if (tabProgress == mLastTabProgress && collapseProgress == mLastCollapseProgress) {
+            return;
+        }
+        mLastTabProgress = tabProgress;
+        mLastCollapseProgress = collapseProgress;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onCarouselProgress(tabProgress, collapseProgress);
+        }
+    }
+
+    /**
+     * Updates the tab selection
+     * 
+     * @param position The index to update
      */
     public void setCurrentTab(int position) {
+        if (mUpdateDepth > 0) {
+            checkTabIndex(position);
+            mPendingCurrentTab = position;
+            return;
+        }
         final CarouselTab selected, deselected;
 
         switch (position) {
@@ -398,15 +1235,31 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
                 deselected = mSecondTab;
                 break;
             case TAB_INDEX_SECOND:
-                selected = mSecondTab;
+                selected = ensureSecondTab();
                 deselected = mFirstTab;
                 break;
             default:
                 throw new IllegalStateException("Invalid tab position " + position);
         }
         selected.setSelected(true);
-        deselected.setSelected(false);
+        if (deselected != null) {
+            deselected.setSelected(false);
+        }
         mCurrentTab = position;
+        if (mTrace != null) {
+            mTrace.record(CarouselTrace.EVENT_TAB_SELECTED, position);
+        }
+        if (mPerformanceProfile.isFixedDimOverlay()) {
+            updateAlphaLayers();
+        }
+        scheduleSnapshot();
+    }
+
+    /**
+     * @return The index of the selected tab
+     */
+    int getCurrentTab() {
+        return mCurrentTab;
     }
 
     /**
@@ -416,12 +1269,16 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @param label The string to set as the label
      */
     public void setLabel(int index, String label) {
+        if (mUpdateDepth > 0) {
+            getPendingTabUpdate(index).setLabel(label);
+            return;
+        }
         switch (index) {
             case TAB_INDEX_FIRST:
                 mFirstTab.setLabel(label);
                 break;
             case TAB_INDEX_SECOND:
-                mSecondTab.setLabel(label);
+                ensureSecondTab().setLabel(label);
                 break;
             default:
                 throw new IllegalStateException("Invalid tab position " + index);
@@ -435,12 +1292,17 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @param resId The resource identifier of the the drawable
      */
     public void setImageResource(int index, int resId) {
+        if (mUpdateDepth > 0) {
+            getPendingTabUpdate(index).setImageResource(resId);
+            return;
+        }
+        mStartupTimeline.mark(CarouselStartupTimeline.PHASE_FIRST_IMAGE_APPLIED);
         switch (index) {
             case TAB_INDEX_FIRST:
                 mFirstTab.setImageResource(resId);
                 break;
             case TAB_INDEX_SECOND:
-                mSecondTab.setImageResource(resId);
+                ensureSecondTab().setImageResource(resId);
                 break;
             default:
                 throw new IllegalStateException("Invalid tab position " + index);
@@ -454,12 +1316,17 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @param drawable The {@link Drawable} to set
      */
     public void setImageDrawable(int index, Drawable drawable) {
+        if (mUpdateDepth > 0) {
+            getPendingTabUpdate(index).setImageDrawable(drawable);
+            return;
+        }
+        mStartupTimeline.mark(CarouselStartupTimeline.PHASE_FIRST_IMAGE_APPLIED);
         switch (index) {
             case TAB_INDEX_FIRST:
                 mFirstTab.setImageDrawable(drawable);
                 break;
             case TAB_INDEX_SECOND:
-                mSecondTab.setImageDrawable(drawable);
+                ensureSecondTab().setImageDrawable(drawable);
                 break;
             default:
                 throw new IllegalStateException("Invalid tab position " + index);
@@ -473,12 +1340,17 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
      * @param bm The {@link Bitmap} to set
      */
     public void setImageBitmap(int index, Bitmap bm) {
+        if (mUpdateDepth > 0) {
+            getPendingTabUpdate(index).setImageBitmap(bm);
+            return;
+        }
+        mStartupTimeline.mark(CarouselStartupTimeline.PHASE_FIRST_IMAGE_APPLIED);
         switch (index) {
             case TAB_INDEX_FIRST:
                 mFirstTab.setImageBitmap(bm);
                 break;
             case TAB_INDEX_SECOND:
-                mSecondTab.setImageBitmap(bm);
+                ensureSecondTab().setImageBitmap(bm);
                 break;
             default:
                 throw new IllegalStateException("Invalid tab position " + index);
@@ -486,121 +1358,1287 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
     }
 
     /**
-     * Used to return the {@link ImageView} from one of the tabs
+     * Shows continuously updated content in a tab instead of an image, until
+     * another image is set. The content runs at the display refresh rate
+     * while the tab is mostly on screen and not dimmed, slower otherwise, and
+     * is paused while the tab can't be seen.
      * 
-     * @param index The index returning the {@link ImageView}
-     * @return The {@link ImageView} from one of the tabs
+     * @param index Which tab
+     * @param content The {@link TabLiveContent} to show, or null to stop
+     *            showing it
      */
-    public ImageView getImage(int index) {
-        switch (index) {
-            case TAB_INDEX_FIRST:
-                return mFirstTab.getImage();
-            case TAB_INDEX_SECOND:
-                return mSecondTab.getImage();
-            default:
-                throw new IllegalStateException("Invalid tab position " + index);
+    public void setLiveContent(int index, TabLiveContent content) {
+        if (mUpdateDepth > 0) {
+            getPendingTabUpdate(index).setLiveContent(content);
+            return;
         }
+        final CarouselTab tab = getTab(index);
+        tab.setLiveContent(content);
+        updateLiveContentRate(tab);
     }
 
     /**
-     * Used to return the label from one of the tabs
+     * Sets the label for a tab from any thread. Labels posted for the same tab
+     * before the next frame replace each other, and only the latest is
+     * applied.
      * 
-     * @param index The index returning the label
-     * @return The label from one of the tabs
+     * @param index Which label to write on
+     * @param label The string to set as the label
      */
-    public TextView getLabel(int index) {
-        switch (index) {
-            case TAB_INDEX_FIRST:
-                return mFirstTab.getLabel();
-            case TAB_INDEX_SECOND:
-                return mSecondTab.getLabel();
-            default:
-                throw new IllegalStateException("Invalid tab position " + index);
+    public void postLabel(int index, String label) {
+        checkTabIndex(index);
+        synchronized (mPostedUpdatesLock) {
+            mPostedLabels[index] = label;
+            mHasPostedLabels[index] = true;
+            schedulePostedUpdates();
         }
     }
 
     /**
-     * Returns the stored Y coordinate of this view the last time the user was
-     * on the selected tab given by tabIndex.
+     * Sets a bitmap as the content of a tab from any thread. Bitmaps posted
+     * for the same tab before the next frame replace each other and only the
+     * latest is applied; the others are handed to the
+     * {@link OnBitmapSupersededListener}, if there is one.
      * 
-     * @param tabIndex The tab index use to return the Y value
+     * @param index Which {@link ImageView}
+     * @param bm The {@link Bitmap} to set
      */
-    public float getStoredYCoordinateForTab(int tabIndex) {
-        return Y_COORDINATE[tabIndex];
+    public void postImageBitmap(int index, Bitmap bm) {
+        checkTabIndex(index);
+        final Bitmap superseded;
+        final OnBitmapSupersededListener listener;
+        synchronized (mPostedUpdatesLock) {
+            superseded = mHasPostedBitmaps[index] ? mPostedBitmaps[index] : null;
+            mPostedBitmaps[index] = bm;
+            mHasPostedBitmaps[index] = true;
+            schedulePostedUpdates();
+            listener = mBitmapSupersededListener;
+        }
+        // Called outside the lock, the listener may post again
+        if (superseded != null && superseded != bm && listener != null) {
+            listener.onBitmapSuperseded(superseded);
+        }
     }
 
     /**
-     * Returns the number of pixels that this view can be scrolled horizontally
+     * Set the given {@link OnBitmapSupersededListener} to take back bitmaps
+     * posted with {@link #postImageBitmap(int, Bitmap)} that were never shown,
+     * for example to return them to a pool or cache
      */
-    public int getAllowedHorizontalScrollLength() {
-        return mAllowedHorizontalScrollLength;
+    public void setOnBitmapSupersededListener(OnBitmapSupersededListener listener) {
+        synchronized (mPostedUpdatesLock) {
+            mBitmapSupersededListener = listener;
+        }
     }
 
     /**
-     * Returns the number of pixels that this view can be scrolled vertically
-     * while still allowing the tab labels to still show
+     * Schedules the posted updates to be applied on the next frame, unless
+     * they already are. Called with {@link #mPostedUpdatesLock} held.
      */
-    public int getAllowedVerticalScrollLength() {
-        return mAllowedVerticalScrollLength;
+    private void schedulePostedUpdates() {
+        if (!mPostedUpdatesScheduled) {
+            mPostedUpdatesScheduled = true;
+            mMainHandler.post(mSchedulePostedUpdatesRunnable);
+        }
     }
 
     /**
-     * @param size The size of the measure specification
-     * @return The measure specifiction based on {@link MeasureSpec.#EXACTLY}
+     * Applies the latest posted updates in a single {@link #commit()}
      */
-    private int measureExact(int size) {
-        return MeasureSpec.makeMeasureSpec(size, MeasureSpec.EXACTLY);
+    private void applyPostedUpdates() {
+        synchronized (mPostedUpdatesLock) {
+            for (int i = 0; i < 2; i++) {
+                mApplyingLabels[i] = mPostedLabels[i];
+                mApplyingHasLabels[i] = mHasPostedLabels[i];
+                mApplyingBitmaps[i] = mPostedBitmaps[i];
+                mApplyingHasBitmaps[i] = mHasPostedBitmaps[i];
+                mPostedLabels[i] = null;
+                mHasPostedLabels[i] = false;
+                mPostedBitmaps[i] = null;
+                mHasPostedBitmaps[i] = false;
+            }
+            mPostedUpdatesScheduled = false;
+        }
+
+        beginUpdate();
+        for (int i = 0; i < 2; i++) {
+            if (mApplyingHasLabels[i]) {
+                setLabel(i, mApplyingLabels[i]);
+            }
+            if (mApplyingHasBitmaps[i]) {
+                setImageBitmap(i, mApplyingBitmaps[i]);
+            }
+            mApplyingLabels[i] = null;
+            mApplyingBitmaps[i] = null;
+        }
+        commit();
     }
 
     /**
-     * Sets the correct alpha layers over the tabs.
+     * @param index The index of a tab
+     * @throws IllegalStateException If there's no tab at the index
      */
-    private void updateAlphaLayers() {
-        float alpha = mLastScrollPosition * MAX_ALPHA / mAllowedHorizontalScrollLength;
-        alpha = Utils.clamp(alpha, 0.0f, 1.0f);
-        mFirstTab.setAlphaLayerValue(alpha);
-        mSecondTab.setAlphaLayerValue(MAX_ALPHA - alpha);
+    private static void checkTabIndex(int index) {
+        if (index != TAB_INDEX_FIRST && index != TAB_INDEX_SECOND) {
+            throw new IllegalStateException("Invalid tab position " + index);
+        }
     }
 
     /**
-     * This listener keeps track of whether the tab carousel animation is
-     * currently going on or not, in order to prevent other simultaneous changes
-     * to the Y position of the tab carousel which can cause flicker.
+     * @param imageLoader The {@link TabImageLoader} used by
+     *            {@link #loadImageResource(int, int)}
      */
-    private final AnimatorListener mTabCarouselAnimatorListener = new AnimatorListener() {
+    public void setImageLoader(TabImageLoader imageLoader) {
+        mImageLoader = imageLoader;
+        if (mImageLoader != null) {
+            mImageLoader.setPerformanceProfile(mPerformanceProfile);
+        }
+    }
 
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public void onAnimationCancel(Animator animation) {
-            mTabCarouselIsAnimating = false;
+    /**
+     * Lays the tab labels out on a background thread at the width computed
+     * in {@code #onMeasure(int, int)}, so setting a label only costs drawing
+     * it. Labels set before the first measure are laid out by the label
+     * itself, like without a cache.
+     * 
+     * @param cache The {@link TabLabelLayoutCache} to use, or null to lay the
+     *            labels out on the UI thread again
+     */
+    public void setLabelLayoutCache(TabLabelLayoutCache cache) {
+        mLabelLayoutCache = cache;
+        mFirstTab.setLabelLayoutCache(cache);
+        if (mSecondTab != null) {
+            mSecondTab.setLabelLayoutCache(cache);
         }
+    }
 
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public void onAnimationEnd(Animator animation) {
-            mTabCarouselIsAnimating = false;
+    /**
+     * Tints the colorstrip and label scrim of each tab with colors extracted
+     * in the background from the images loaded with
+     * {@link #loadImageResource(int, int)}
+     * 
+     * @param extractor The {@link TabColorExtractor} to use, or null to keep
+     *            the default colors
+     */
+    public void setColorExtractor(TabColorExtractor extractor) {
+        mColorExtractor = extractor;
+        mFirstTab.setColorExtractor(extractor);
+        if (mSecondTab != null) {
+            mSecondTab.setColorExtractor(extractor);
         }
+    }
 
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public void onAnimationRepeat(Animator animation) {
-            mTabCarouselIsAnimating = true;
+    /**
+     * Draws a blurred copy of the images loaded with
+     * {@link #loadImageResource(int, int)} behind the tab labels
+     * 
+     * @param blurrer The {@link TabScrimBlurrer} to use, or null to draw the
+     *            plain scrim
+     */
+    public void setScrimBlurrer(TabScrimBlurrer blurrer) {
+        mScrimBlurrer = blurrer;
+        mFirstTab.setScrimBlurrer(blurrer);
+        if (mSecondTab != null) {
+            mSecondTab.setScrimBlurrer(blurrer);
         }
+    }
 
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public void onAnimationStart(Animator animation) {
-            mTabCarouselIsAnimating = true;
+    /**
+     * Overrides the {@link CarouselPerformanceProfile} chosen for the device.
+     * Call this again after changing the profile to apply the changes.
+     * 
+     * @param profile The {@link CarouselPerformanceProfile} to use
+     */
+    public void setPerformanceProfile(CarouselPerformanceProfile profile) {
+        mPerformanceProfile = profile;
+        if (mImageLoader != null) {
+            mImageLoader.setPerformanceProfile(profile);
         }
-    };
+        if (mFirstTab != null) {
+            updateAlphaLayers();
+        }
+    }
+
+    /**
+     * @return The {@link CarouselPerformanceProfile} in use
+     */
+    public CarouselPerformanceProfile getPerformanceProfile() {
+        return mPerformanceProfile;
+    }
+
+    /**
+     * Loads a drawable into the tab {@link ImageView} in the background,
+     * downsampled to the measured size of the tab
+     * 
+     * @param index Which {@link ImageView}
+     * @param resId The resource identifier of the the drawable
+     */
+    public void loadImageResource(int index, int resId) {
+        if (mImageLoader == null) {
+            throw new IllegalStateException("setImageLoader() must be called first");
+        }
+        if (mUpdateDepth > 0) {
+            getPendingTabUpdate(index).loadImageResource(resId);
+            return;
+        }
+        switch (index) {
+            case TAB_INDEX_FIRST:
+                mFirstTab.loadImageResource(mImageLoader, resId);
+                break;
+            case TAB_INDEX_SECOND:
+                ensureSecondTab().loadImageResource(mImageLoader, resId);
+                break;
+            default:
+                throw new IllegalStateException("Invalid tab position " + index);
+        }
+    }
+
+    /**
+     * Releases the tab images loaded with {@link #loadImageResource(int, int)}
+     * and keeps a low-quality placeholder in their place. They are decoded
+     * again when the window becomes visible, or by calling
+     * {@link #restoreImages()}.
+     */
+    public void releaseImages() {
+        releaseImages(false);
+    }
+
+    /**
+     * Like {@link #releaseImages()}
+     * 
+     * @param evict True to also drop the decoded bitmaps from the
+     *            {@link TabImageLoader} cache
+     */
+    private void releaseImages(boolean evict) {
+        mFirstTab.releaseImage(evict);
+        if (mSecondTab != null) {
+            mSecondTab.releaseImage(evict);
+        }
+    }
+
+    /**
+     * Decodes the tab images released by {@link #releaseImages()} again
+     */
+    public void restoreImages() {
+        mFirstTab.restoreImage();
+        if (mSecondTab != null) {
+            mSecondTab.restoreImage();
+        }
+    }
+
+    /**
+     * Returns the number of bytes used by the bitmaps the tabs currently draw
+     */
+    public int getImageByteCount() {
+        return mFirstTab.getImageByteCount()
+                + (mSecondTab != null ? mSecondTab.getImageByteCount() : 0);
+    }
+
+    /**
+     * Called when the system needs memory back
+     * 
+     * @param level The level passed to
+     *            {@link ComponentCallbacks2#onTrimMemory(int)}
+     */
+    private void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            // Nothing is visible, the images are restored on return. The
+            // loader cache would keep the same bitmaps alive otherwise.
+            releaseImages(true);
+        }
+        if (mImageLoader != null) {
+            mImageLoader.trimMemory(level);
+        }
+    }
+
+    /**
+     * Starts or stops recording the carousel hot paths. Recording costs a
+     * null check per call while disabled.
+     * 
+     * @param enabled True to record {@link CarouselMetrics}, false otherwise
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        if (enabled == (mMetrics != null)) {
+            return;
+        }
+        mMetrics = enabled ? new CarouselMetrics() : null;
+        mFirstTab.setMetrics(mMetrics);
+        if (mSecondTab != null) {
+            mSecondTab.setMetrics(mMetrics);
+        }
+    }
+
+    /**
+     * @return The {@link CarouselMetrics} being recorded, or null if metrics
+     *         are disabled
+     */
+    public CarouselMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Starts or stops recording recent carousel events into a
+     * {@link CarouselTrace} that can be dumped for bug reports
+     * 
+     * @param enabled True to record events, false otherwise
+     */
+    public void setTraceEnabled(boolean enabled) {
+        if (enabled != (mTrace != null)) {
+            mTrace = enabled ? new CarouselTrace(CarouselTrace.DEFAULT_CAPACITY) : null;
+        }
+    }
+
+    /**
+     * @return The {@link CarouselTrace} being recorded, or null if tracing is
+     *         disabled
+     */
+    public CarouselTrace getTrace() {
+        return mTrace;
+    }
+
+    /**
+     * @return True if the carousel is pinned so only the labels are visible
+     */
+    public boolean isCollapsed() {
+        return mCollapsed;
+    }
+
+    /**
+     * Releases the tab images once the carousel has been collapsed for the
+     * given time, and restores them when it expands again
+     * 
+     * @param delayMillis The time to wait before releasing the images, or -1
+     *            to always keep them
+     */
+    public void setCollapsedImageReleaseDelay(long delayMillis) {
+        mCollapsedImageReleaseDelay = delayMillis;
+        removeCallbacks(mReleaseImagesRunnable);
+        if (mCollapsed && delayMillis >= 0) {
+            postDelayed(mReleaseImagesRunnable, delayMillis);
+        }
+    }
+
+    /**
+     * @param y A vertical position of the carousel
+     * @return True if only the labels are visible at the given position
+     */
+    private boolean isCollapsedAt(float y) {
+        return mAllowedVerticalScrollLength > 0 && y <= -mAllowedVerticalScrollLength;
+    }
+
+    /**
+     * Updates the collapsed state from the current vertical position
+     */
+    private void updateCollapsed() {
+        setCollapsed(isCollapsedAt(ViewHelper.getY(this)));
+    }
+
+    /**
+     * @param collapsed True if only the labels are visible
+     */
+    private void setCollapsed(boolean collapsed) {
+        if (mCollapsed == collapsed) {
+            return;
+        }
+        mCollapsed = collapsed;
+        removeCallbacks(mReleaseImagesRunnable);
+        if (collapsed) {
+            if (mCollapsedImageReleaseDelay >= 0) {
+                postDelayed(mReleaseImagesRunnable, mCollapsedImageReleaseDelay);
+            }
+        } else {
+            restoreImages();
+        }
+        updateLiveContentRates();
+        updateAutoplay();
+        scheduleSnapshot();
+        invalidate();
+    }
+
+    /**
+     * Moves to the next tab at a regular interval, like a banner. The timer
+     * is driven by {@link Choreographer} from Jelly Bean, so each change
+     * happens on a frame and nothing runs in between. It's suspended while
+     * the carousel or its {@code ViewPager} is touched, while the carousel is
+     * collapsed and while its window isn't visible or it's detached. Leaving a
+     * suspension continues with the time that was left, and the interval is
+     * kept between changes even when a frame comes late; only a touch
+     * restarts the full interval. With a {@link CarouselPagerAdapter}, the
+     * pager animates to each page and the carousel follows it; otherwise the
+     * carousel scrolls to the tab on its own.
+     * 
+     * @param intervalMillis The time each tab is shown, or 0 to stop
+     */
+    public void setAutoplayInterval(long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("The interval must not be negative");
+        }
+        stopAutoplay();
+        mAutoplayIntervalNanos = intervalMillis * 1000000L;
+        mAutoplayRemainingNanos = mAutoplayIntervalNanos;
+        updateAutoplay();
+    }
+
+    /**
+     * @return True if autoplay is on, even if it's currently suspended
+     */
+    public boolean isAutoplayEnabled() {
+        return mAutoplayIntervalNanos > 0;
+    }
+
+    /**
+     * Called by {@link CarouselPagerAdapter} when it connects a pager, which
+     * then animates to each tab chosen by autoplay
+     */
+    void setPagerConnected() {
+        mPagerConnected = true;
+    }
+
+    /**
+     * Called by {@link CarouselPagerAdapter} when the user starts or stops
+     * dragging the pager
+     * 
+     * @param dragging True while the pager is dragged
+     */
+    void setPagerDragging(boolean dragging) {
+        if (mPagerDragging == dragging) {
+            return;
+        }
+        mPagerDragging = dragging;
+        if (!dragging) {
+            mAutoplayRemainingNanos = mAutoplayIntervalNanos;
+        }
+        updateAutoplay();
+    }
+
+    /**
+     * Starts or suspends autoplay depending on what is on screen
+     */
+    private void updateAutoplay() {
+        final boolean run = mAutoplayIntervalNanos > 0 && mDualTabs && !mTouching
+                && !mPagerDragging && !mCollapsed && mWindowVisibility == VISIBLE;
+        if (run == mAutoplayRunning) {
+            return;
+        }
+        if (run) {
+            mAutoplayRunning = true;
+            mAutoplayDeadlineNanos = System.nanoTime() + mAutoplayRemainingNanos;
+            scheduleAutoplay(mAutoplayRemainingNanos);
+        } else {
+            stopAutoplay();
+        }
+    }
+
+    /**
+     * Suspends autoplay and remembers the time that was left
+     */
+    private void stopAutoplay() {
+        if (!mAutoplayRunning) {
+            return;
+        }
+        mAutoplayRunning = false;
+        mAutoplayRemainingNanos = Math.max(0, mAutoplayDeadlineNanos - System.nanoTime());
+        if (mAutoplayFrameCallback != null) {
+            removeAutoplayFrameCallback();
+        }
+        removeCallbacks(mAutoplayRunnable);
+    }
+
+    /**
+     * @param delayNanos The time until the next tab change
+     */
+    private void scheduleAutoplay(long delayNanos) {
+        final long delayMillis = delayNanos / 1000000L;
+        if (Utils.hasJellyBean()) {
+            postAutoplayFrameCallback(delayMillis);
+        } else {
+            postDelayed(mAutoplayRunnable, delayMillis);
+        }
+    }
+
+    /**
+     * Posts {@code #mAutoplayFrameCallback}
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postAutoplayFrameCallback(long delayMillis) {
+        if (mAutoplayFrameCallback == null) {
+            mAutoplayFrameCallback = new AutoplayFrameCallback();
+        }
+        Choreographer.getInstance().postFrameCallbackDelayed(
+                (AutoplayFrameCallback) mAutoplayFrameCallback, delayMillis);
+    }
+
+    /**
+     * Removes {@code #mAutoplayFrameCallback}
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void removeAutoplayFrameCallback() {
+        Choreographer.getInstance().removeFrameCallback(
+                (AutoplayFrameCallback) mAutoplayFrameCallback);
+    }
+
+    /**
+     * Changes tabs if it's time to, and schedules the next change
+     * 
+     * @param frameTimeNanos The time of the frame, in the
+     *            {@link System#nanoTime()} time base
+     */
+    private void onAutoplayFrame(long frameTimeNanos) {
+        if (!mAutoplayRunning) {
+            return;
+        }
+        if (frameTimeNanos < mAutoplayDeadlineNanos) {
+            // The delay was rounded down
+            scheduleAutoplay(mAutoplayDeadlineNanos - frameTimeNanos);
+            return;
+        }
+        // Keep the schedule, unless the carousel fell a whole interval behind
+        mAutoplayDeadlineNanos += mAutoplayIntervalNanos;
+        if (mAutoplayDeadlineNanos <= frameTimeNanos) {
+            mAutoplayDeadlineNanos = frameTimeNanos + mAutoplayIntervalNanos;
+        }
+        scheduleAutoplay(mAutoplayDeadlineNanos - frameTimeNanos);
+
+        final int next = mCurrentTab == TAB_INDEX_FIRST ? TAB_INDEX_SECOND : TAB_INDEX_FIRST;
+        if (mPagerConnected) {
+            // Let the pager animate to the page, like a click would
+            dispatchTabSelected(next);
+        } else {
+            setCurrentTab(next);
+            smoothScrollTo(next == TAB_INDEX_FIRST ? 0 : mAllowedHorizontalScrollLength, 0);
+        }
+    }
+
+    /**
+     * Changes tabs before Jelly Bean
+     */
+    private final Runnable mAutoplayRunnable = new Runnable() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            onAutoplayFrame(System.nanoTime());
+        }
+    };
+
+    /**
+     * Changes tabs on a frame
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private final class AutoplayFrameCallback implements Choreographer.FrameCallback {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            onAutoplayFrame(frameTimeNanos);
+        }
+    }
+
+    /**
+     * @param index The index of a tab
+     * @return The {@link CarouselTab} at the index
+     */
+    private CarouselTab getTab(int index) {
+        switch (index) {
+            case TAB_INDEX_FIRST:
+                return mFirstTab;
+            case TAB_INDEX_SECOND:
+                return ensureSecondTab();
+            default:
+                throw new IllegalStateException("Invalid tab position " + index);
+        }
+    }
+
+    /**
+     * @param index The index of a tab
+     * @return The changes gathered for the tab at the index
+     */
+    private PendingTabUpdate getPendingTabUpdate(int index) {
+        checkTabIndex(index);
+        return mPendingTabUpdates[index];
+    }
+
+    /**
+     * @return The {@link CarouselStartupTimeline} of this carousel
+     */
+    public CarouselStartupTimeline getStartupTimeline() {
+        return mStartupTimeline;
+    }
+
+    /**
+     * Set the given {@link OnFullyDrawnListener} to find out when the carousel
+     * has been drawn with every tab image in full quality
+     */
+    public void setOnFullyDrawnListener(OnFullyDrawnListener listener) {
+        mFullyDrawnListener = listener;
+    }
+
+    /**
+     * Marks the carousel as fully drawn once no tab waits for its image
+     */
+    private void checkFullyDrawn() {
+        if (isImagePending()) {
+            return;
+        }
+        mStartupTimeline.mark(CarouselStartupTimeline.PHASE_FULLY_DRAWN);
+        if (mSnapshot != null) {
+            // Real content from now on
+            removeCallbacks(mReleaseSnapshotRunnable);
+            mSnapshot.releasePlaceholder();
+            scheduleSnapshot();
+        }
+        if (mFullyDrawnListener != null) {
+            mFullyDrawnListener.onCarouselFullyDrawn(mStartupTimeline);
+        }
+    }
+
+    /**
+     * @return True if a tab still waits for its image
+     */
+    private boolean isImagePending() {
+        return mFirstTab.isImagePending() || mSecondTab != null && mSecondTab.isImagePending();
+    }
+
+    /**
+     * Shows a snapshot saved by a previous launch until the tab images are
+     * ready, and saves a new one whenever the carousel stays still for a
+     * moment. The snapshot is only drawn if it was taken at the current size,
+     * with the same tab selected and of the same content, and for at most
+     * {@code #SNAPSHOT_TIMEOUT} or until a tab image fails to decode.
+     * 
+     * @param snapshot The {@link CarouselSnapshot} to use, or null to stop
+     *            using one
+     */
+    public void setSnapshot(CarouselSnapshot snapshot) {
+        removeCallbacks(mCaptureSnapshotRunnable);
+        removeCallbacks(mReleaseSnapshotRunnable);
+        mSnapshot = snapshot;
+        if (snapshot == null) {
+            return;
+        }
+        if (mStartupTimeline.hasReached(CarouselStartupTimeline.PHASE_FULLY_DRAWN)) {
+            scheduleSnapshot();
+        } else {
+            snapshot.attach(this);
+        }
+    }
+
+    /**
+     * Called by {@link CarouselSnapshot} once the saved snapshot is loaded
+     */
+    void onSnapshotLoaded() {
+        if (mSnapshot == null) {
+            return;
+        }
+        if (mStartupTimeline.hasReached(CarouselStartupTimeline.PHASE_FULLY_DRAWN)) {
+            // Too late, the real content is already shown
+            mSnapshot.releasePlaceholder();
+        } else {
+            // Don't hide the real content for long if an image is slow
+            postDelayed(mReleaseSnapshotRunnable, SNAPSHOT_TIMEOUT);
+            invalidate();
+        }
+    }
+
+    /**
+     * Stops drawing the loaded snapshot, even though a tab image is still
+     * missing
+     */
+    private void releaseSnapshot() {
+        removeCallbacks(mReleaseSnapshotRunnable);
+        if (mSnapshot != null) {
+            mSnapshot.releasePlaceholder();
+            invalidate();
+        }
+    }
+
+    /**
+     * Releases a snapshot drawn for too long
+     */
+    private final Runnable mReleaseSnapshotRunnable = new Runnable() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            releaseSnapshot();
+        }
+    };
+
+    /**
+     * Draws the saved snapshot in place of the tabs
+     * 
+     * @return True if the snapshot was drawn
+     */
+    private boolean drawSnapshot(Canvas canvas) {
+        if (mSnapshot == null || mStartupTimeline.hasReached(
+                CarouselStartupTimeline.PHASE_FULLY_DRAWN)) {
+            return false;
+        }
+        final Bitmap placeholder = mSnapshot.getPlaceholder(getWidth(), getHeight(),
+                mCurrentTab);
+        if (placeholder == null) {
+            return false;
+        }
+        mSnapshotBounds.set(getScrollX(), 0, getScrollX() + getWidth(), getHeight());
+        canvas.drawBitmap(placeholder, null, mSnapshotBounds, mSnapshotPaint);
+        return true;
+    }
+
+    /**
+     * Saves a snapshot once the carousel has stayed still for
+     * {@code #SNAPSHOT_IDLE_DELAY}
+     */
+    private void scheduleSnapshot() {
+        if (mSnapshot != null
+                && mStartupTimeline.hasReached(CarouselStartupTimeline.PHASE_FULLY_DRAWN)) {
+            removeCallbacks(mCaptureSnapshotRunnable);
+            postDelayed(mCaptureSnapshotRunnable, SNAPSHOT_IDLE_DELAY);
+        }
+    }
+
+    /**
+     * Saves a snapshot if the carousel is idle
+     */
+    private final Runnable mCaptureSnapshotRunnable = new Runnable() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            if (mSnapshot == null || mTouching || mPagerDragging || mTabCarouselIsAnimating
+                    || mCollapsed || mWindowVisibility != VISIBLE || isImagePending()) {
+                // Not idle, the next change schedules another try
+                return;
+            }
+            mSnapshot.capture(CarouselContainer.this, mCurrentTab);
+        }
+    };
+
+    /**
+     * Returns the number of milliseconds between requesting a tab image with
+     * {@link #loadImageResource(int, int)} and the first tab showing content,
+     * which may be a low-quality preview, or -1 if that hasn't happened yet
+     */
+    public long getTimeToFirstMeaningfulTab() {
+        return mTimeToFirstMeaningfulTab;
+    }
+
+    /**
+     * Set the given {@link OnFirstMeaningfulTabListener} to report the time to
+     * the first meaningful tab
+     */
+    public void setOnFirstMeaningfulTabListener(OnFirstMeaningfulTabListener listener) {
+        mFirstMeaningfulTabListener = listener;
+    }
+
+    /**
+     * Used to return the {@link ImageView} from one of the tabs
+     * 
+     * @param index The index returning the {@link ImageView}
+     * @return The {@link ImageView} from one of the tabs, or null for the
+     *         second tab if no content was set on it yet, since reading it
+     *         doesn't inflate the tab
+     */
+    public ImageView getImage(int index) {
+        switch (index) {
+            case TAB_INDEX_FIRST:
+                return mFirstTab.getImage();
+            case TAB_INDEX_SECOND:
+                return mSecondTab != null ? mSecondTab.getImage() : null;
+            default:
+                throw new IllegalStateException("Invalid tab position " + index);
+        }
+    }
+
+    /**
+     * Used to return the label from one of the tabs
+     * 
+     * @param index The index returning the label
+     * @return The label from one of the tabs, or null for the second tab if
+     *         no content was set on it yet, since reading it doesn't inflate
+     *         the tab
+     */
+    public TextView getLabel(int index) {
+        switch (index) {
+            case TAB_INDEX_FIRST:
+                return mFirstTab.getLabel();
+            case TAB_INDEX_SECOND:
+                return mSecondTab != null ? mSecondTab.getLabel() : null;
+            default:
+                throw new IllegalStateException("Invalid tab position " + index);
+        }
+    }
+
+    /**
+     * Returns the stored Y coordinate of this view the last time the user was
+     * on the selected tab given by tabIndex.
+     * 
+     * @param tabIndex The tab index use to return the Y value
+     */
+    public float getStoredYCoordinateForTab(int tabIndex) {
+        return mYCoordinates[tabIndex];
+    }
+
+    /**
+     * Returns the number of pixels that this view can be scrolled horizontally
+     */
+    public int getAllowedHorizontalScrollLength() {
+        return mAllowedHorizontalScrollLength;
+    }
+
+    /**
+     * Returns the number of pixels that this view can be scrolled vertically
+     * while still allowing the tab labels to still show
+     */
+    public int getAllowedVerticalScrollLength() {
+        return mAllowedVerticalScrollLength;
+    }
+
+    /**
+     * Returns the width of the tab images, as computed during the last measure
+     */
+    public int getTabImageWidth() {
+        return mTabImageWidth;
+    }
+
+    /**
+     * Returns the height of the tab images, as computed during the last
+     * measure
+     */
+    public int getTabImageHeight() {
+        return mTabImageHeight;
+    }
+
+    /**
+     * @param size The size of the measure specification
+     * @return The measure specifiction based on {@link MeasureSpec.#EXACTLY}
+     */
+    private int measureExact(int size) {
+        return MeasureSpec.makeMeasureSpec(size, MeasureSpec.EXACTLY);
+    }
+
+    /**
+     * Sets the correct alpha layers over the tabs.
+     */
+    private void updateAlphaLayers() {
+        if (mPerformanceProfile.isFixedDimOverlay()) {
+            // Only dim the tab that isn't selected
+            mFirstTab.setAlphaLayerValue(mCurrentTab == TAB_INDEX_FIRST ? 0.0f : MAX_ALPHA);
+            if (mSecondTab != null) {
+                mSecondTab.setAlphaLayerValue(mCurrentTab == TAB_INDEX_SECOND ? 0.0f : MAX_ALPHA);
+            }
+        } else {
+            float alpha = mLastScrollPosition * MAX_ALPHA / mAllowedHorizontalScrollLength;
+            alpha = Utils.clamp(alpha, 0.0f, 1.0f);
+            mFirstTab.setAlphaLayerValue(alpha);
+            if (mSecondTab != null) {
+                mSecondTab.setAlphaLayerValue(MAX_ALPHA - alpha);
+            }
+        }
+        updateLiveContentRates();
+    }
+
+    /**
+     * Lets the live content of each tab update at full rate only while the
+     * tab is mostly on screen and not dimmed
+     */
+    private void updateLiveContentRates() {
+        updateLiveContentRate(mFirstTab);
+        if (mSecondTab != null) {
+            updateLiveContentRate(mSecondTab);
+        }
+    }
+
+    /**
+     * @param tab The {@link CarouselTab} whose live content rate to update
+     */
+    private void updateLiveContentRate(CarouselTab tab) {
+        if (tab.getLiveContent() == null) {
+            return;
+        }
+        final int width = tab.getWidth();
+        final int visibleWidth = Math.min(tab.getRight(), getScrollX() + getWidth())
+                - Math.max(tab.getLeft(), getScrollX());
+        final int rate;
+        if (mWindowVisibility != VISIBLE || tab.getVisibility() != VISIBLE || mCollapsed
+                || width > 0 && visibleWidth <= 0) {
+            // Can't be seen at all
+            rate = TabLiveContent.RATE_PAUSED;
+        } else if (width > 0 && visibleWidth < width * LIVE_CONTENT_MIN_VISIBLE_FRACTION
+                || tab.getAlphaLayerValue() > LIVE_CONTENT_MAX_DIM) {
+            rate = TabLiveContent.RATE_THROTTLED;
+        } else {
+            rate = TabLiveContent.RATE_FULL;
+        }
+        tab.setLiveContentRate(rate);
+    }
+
+    /**
+     * Releases the tab images while the carousel stays collapsed
+     */
+    private final Runnable mReleaseImagesRunnable = new Runnable() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            releaseImages();
+        }
+    };
+
+    /**
+     * This listener keeps track of whether the tab carousel animation is
+     * currently going on or not, in order to prevent other simultaneous changes
+     * to the Y position of the tab carousel which can cause flicker.
+     */
+    private final AnimatorListener mTabCarouselAnimatorListener = new AnimatorListener() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAnimationCancel(Animator animation) {
+            mTabCarouselIsAnimating = false;
+            if (mTrace != null) {
+                mTrace.record(CarouselTrace.EVENT_ANIMATION_END, 1);
+            }
+            updateCollapsed();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            mTabCarouselIsAnimating = false;
+            if (mTrace != null) {
+                mTrace.record(CarouselTrace.EVENT_ANIMATION_END, 0);
+            }
+            updateCollapsed();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAnimationRepeat(Animator animation) {
+            mTabCarouselIsAnimating = true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAnimationStart(Animator animation) {
+            mTabCarouselIsAnimating = true;
+            if (mTrace != null) {
+                mTrace.record(CarouselTrace.EVENT_ANIMATION_START,
+                        (int) animation.getDuration());
+            }
+        }
+    };
+
+    /**
+     * Runs on the UI thread to apply the posted updates with the next frame
+     */
+    private final Runnable mSchedulePostedUpdatesRunnable = new Runnable() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            ViewCompat.postOnAnimation(CarouselContainer.this, mApplyPostedUpdatesRunnable);
+        }
+    };
+
+    /**
+     * Applies the posted updates
+     */
+    private final Runnable mApplyPostedUpdatesRunnable = new Runnable() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            applyPostedUpdates();
+        }
+    };
+
+    /**
+     * Reports the collapse progress while the carousel moves vertically
+     */
+    private final AnimatorUpdateListener mTabCarouselUpdateListener = new AnimatorUpdateListener() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            dispatchProgress();
+            updateParallax();
+        }
+    };
+
+    /**
+     * Records when the tab images are decoded and shown
+     */
+    private final CarouselTab.OnTabImageListener mTabImageListener = new CarouselTab.OnTabImageListener() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onImageDecoded(CarouselTab tab, long durationNanos) {
+            mStartupTimeline.mark(CarouselStartupTimeline.PHASE_FIRST_IMAGE_DECODED);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onImageShown(CarouselTab tab, long elapsed, boolean preview) {
+            mStartupTimeline.mark(CarouselStartupTimeline.PHASE_FIRST_IMAGE_APPLIED);
+            if (!preview && !mStartupTimeline.hasReached(CarouselStartupTimeline.PHASE_FULLY_DRAWN)) {
+                // Make sure the carousel draws again to notice it's complete
+                invalidate();
+            } else if (!preview) {
+                // The content changed, save it once the carousel is idle
+                scheduleSnapshot();
+            }
+            if (elapsed == -1 || mTimeToFirstMeaningfulTab != -1) {
+                return;
+            }
+            mTimeToFirstMeaningfulTab = elapsed;
+            if (mFirstMeaningfulTabListener != null) {
+                mFirstMeaningfulTabListener.onFirstMeaningfulTab(elapsed, preview);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onImageFailed(CarouselTab tab) {
+            if (!mStartupTimeline.hasReached(CarouselStartupTimeline.PHASE_FULLY_DRAWN)) {
+                // The snapshot may show an image the tab won't, and the
+                // carousel must draw again to notice it's complete
+                releaseSnapshot();
+                invalidate();
+            }
+        }
+    };
+
+    /**
+     * Interface invoked when a bitmap posted with
+     * {@link CarouselContainer#postImageBitmap(int, Bitmap)} is replaced before
+     * it's shown
+     */
+    public interface OnBitmapSupersededListener {
+
+        /**
+         * Called on the thread that posted the replacement
+         * 
+         * @param bitmap The {@link Bitmap} that will never be shown
+         */
+        public void onBitmapSuperseded(Bitmap bitmap);
+    }
+
+    /**
+     * Interface invoked when the carousel has been drawn with every tab image
+     */
+    public interface OnFullyDrawnListener {
+
+        /**
+         * @param timeline The {@link CarouselStartupTimeline} of the carousel
+         */
+        public void onCarouselFullyDrawn(CarouselStartupTimeline timeline);
+    }
+
+    /**
+     * Interface invoked when the first tab shows a requested image
+     */
+    public interface OnFirstMeaningfulTabListener {
+
+        /**
+         * @param elapsed Milliseconds between requesting the image and
+         *            showing it
+         * @param preview True if a low-quality preview was shown
+         */
+        public void onFirstMeaningfulTab(long elapsed, boolean preview);
+    }
+
+    /**
+     * Forwards memory pressure callbacks to the carousel. Registered with the
+     * application {@link Context}, so the carousel is only weakly referenced.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static final class TrimMemoryCallbacks implements ComponentCallbacks2 {
+
+        /**
+         * Reference to {@link CarouselContainer}
+         */
+        private final WeakReference<CarouselContainer> mReference;
+
+        /**
+         * @param carouselHeader The {@link CarouselContainer} to notify
+         */
+        public TrimMemoryCallbacks(CarouselContainer carouselHeader) {
+            super();
+            mReference = new WeakReference<CarouselContainer>(carouselHeader);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onTrimMemory(int level) {
+            final CarouselContainer carousel = mReference.get();
+            if (carousel != null) {
+                carousel.onTrimMemory(level);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onLowMemory() {
+            onTrimMemory(TRIM_MEMORY_COMPLETE);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    }
+
+    /**
+     * The changes made to one tab between {@link #beginUpdate()} and
+     * {@link #commit()}
+     */
+    private static final class PendingTabUpdate {
+
+        private static final int IMAGE_NONE = 0;
+
+        private static final int IMAGE_RESOURCE = 1;
+
+        private static final int IMAGE_DRAWABLE = 2;
+
+        private static final int IMAGE_BITMAP = 3;
+
+        private static final int IMAGE_LOAD_RESOURCE = 4;
+
+        private static final int IMAGE_LIVE_CONTENT = 5;
+
+        private boolean mHasLabel;
+
+        private String mLabel;
+
+        /**
+         * Which of the image fields holds the image to set
+         */
+        private int mImageType = IMAGE_NONE;
+
+        private int mImageResId;
+
+        private Drawable mImageDrawable;
+
+        private Bitmap mImageBitmap;
+
+        private TabLiveContent mLiveContent;
+
+        void setLabel(String label) {
+            mHasLabel = true;
+            mLabel = label;
+        }
+
+        void setImageResource(int resId) {
+            clearImage();
+            mImageType = IMAGE_RESOURCE;
+            mImageResId = resId;
+        }
+
+        void setImageDrawable(Drawable drawable) {
+            clearImage();
+            mImageType = IMAGE_DRAWABLE;
+            mImageDrawable = drawable;
+        }
+
+        void setImageBitmap(Bitmap bm) {
+            clearImage();
+            mImageType = IMAGE_BITMAP;
+            mImageBitmap = bm;
+        }
+
+        void loadImageResource(int resId) {
+            clearImage();
+            mImageType = IMAGE_LOAD_RESOURCE;
+            mImageResId = resId;
+        }
+
+        void setLiveContent(TabLiveContent content) {
+            clearImage();
+            mImageType = IMAGE_LIVE_CONTENT;
+            mLiveContent = content;
+        }
+
+        private void clearImage() {
+            mImageType = IMAGE_NONE;
+            mImageDrawable = null;
+            mImageBitmap = null;
+            mLiveContent = null;
+        }
+
+        /**
+         * Forgets every change
+         */
+        void clear() {
+            mHasLabel = false;
+            mLabel = null;
+            clearImage();
+        }
+
+        /**
+         * Applies the changes to the tab at the given index and forgets them
+         */
+        void apply(CarouselContainer carousel, int index) {
+            if (mHasLabel) {
+                carousel.setLabel(index, mLabel);
+            }
+            switch (mImageType) {
+                case IMAGE_RESOURCE:
+                    carousel.setImageResource(index, mImageResId);
+                    break;
+                case IMAGE_DRAWABLE:
+                    carousel.setImageDrawable(index, mImageDrawable);
+                    break;
+                case IMAGE_BITMAP:
+                    carousel.setImageBitmap(index, mImageBitmap);
+                    break;
+                case IMAGE_LOAD_RESOURCE:
+                    carousel.loadImageResource(index, mImageResId);
+                    break;
+                case IMAGE_LIVE_CONTENT:
+                    carousel.setLiveContent(index, mLiveContent);
+                    break;
+                default:
+                    break;
+            }
+            clear();
+        }
+    }
 
     /** When pressed, selects the corresponding tab */
     private static final class TabClickListener implements OnClickListener {
@@ -629,7 +2667,7 @@ public class CarouselContainer extends HorizontalScrollView implements OnTouchLi
          */
         @Override
         public void onClick(View v) {
-            mReference.get().mCarouselListener.onTabSelected(mTab);
+            mReference.get().dispatchTabSelected(mTab);
         }
     }
 
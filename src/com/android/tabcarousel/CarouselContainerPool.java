@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import com.android.tabcarousel.R;
+
+/**
+ * Keeps a few recycled {@link CarouselContainer}s around so a list showing a
+ * carousel in each row inflates only as many as are on screen at once. Used on
+ * the UI thread only.
+ */
+public class CarouselContainerPool {
+
+    /**
+     * Used to inflate new carousels
+     */
+    private final LayoutInflater mInflater;
+
+    /**
+     * The recycled carousels, the last one is handed out first
+     */
+    private final CarouselContainer[] mPool;
+
+    /**
+     * Number of carousels in {@code #mPool}
+     */
+    private int mSize;
+
+    /**
+     * Constructor of <code>CarouselContainerPool</code>
+     *
+     * @param context The {@link Context} to use
+     * @param maxSize The most carousels kept for reuse
+     */
+    public CarouselContainerPool(Context context, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The pool size must be positive");
+        }
+        mInflater = LayoutInflater.from(context);
+        mPool = new CarouselContainer[maxSize];
+    }
+
+    /**
+     * Returns a recycled carousel, or inflates a new one if there is none.
+     * Either way, the carousel has no content or listeners yet.
+     *
+     * @param parent The {@link ViewGroup} the carousel will be added to, used
+     *            for its layout parameters
+     * @return A {@link CarouselContainer} ready to be bound
+     */
+    public CarouselContainer acquire(ViewGroup parent) {
+        if (mSize > 0) {
+            final CarouselContainer carousel = mPool[--mSize];
+            mPool[mSize] = null;
+            return carousel;
+        }
+        return (CarouselContainer) mInflater.inflate(R.layout.carousel_header, parent, false);
+    }
+
+    /**
+     * Recycles a carousel that is no longer shown and keeps it for
+     * {@link #acquire(ViewGroup)}, unless the pool is full. The carousel must
+     * already be removed from its parent.
+     *
+     * @param carousel The {@link CarouselContainer} to recycle
+     */
+    public void release(CarouselContainer carousel) {
+        carousel.recycle();
+        if (mSize < mPool.length) {
+            mPool[mSize++] = carousel;
+        }
+    }
+
+    /**
+     * Drops every recycled carousel
+     */
+    public void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mPool[i] = null;
+        }
+        mSize = 0;
+    }
+
+    /**
+     * @return The number of carousels waiting to be reused
+     */
+    public int size() {
+        return mSize;
+    }
+}
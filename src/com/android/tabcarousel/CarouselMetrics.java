@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+/**
+ * Counts and times the hot paths of a {@link CarouselContainer} and records
+ * the duration of every frame drawn while the user interacts with it. All
+ * storage is preallocated, so recording never allocates. Metrics are only
+ * collected once enabled with {@link CarouselContainer#setMetricsEnabled}.
+ * <p>
+ * Frame durations are measured with {@link Choreographer}, so the histogram
+ * stays empty before Jelly Bean. Everything is recorded and read on the UI
+ * thread.
+ */
+public class CarouselMetrics {
+
+    /**
+     * {@code CarouselContainer#onMeasure}
+     */
+    public static final int EVENT_MEASURE = 0;
+
+    /**
+     * {@code CarouselContainer#onLayout}
+     */
+    public static final int EVENT_LAYOUT = 1;
+
+    /**
+     * {@code CarouselContainer#onScrollChanged}
+     */
+    public static final int EVENT_SCROLL_CHANGED = 2;
+
+    /**
+     * A header move requested by {@link BackScrollManager}
+     */
+    public static final int EVENT_HEADER_MOVE = 3;
+
+    /**
+     * An animation started by
+     * {@link CarouselContainer#restoreYCoordinate(int, int)}
+     */
+    public static final int EVENT_RESTORE_ANIMATION = 4;
+
+    /**
+     * A fake drag started by {@link CarouselPagerAdapter}
+     */
+    public static final int EVENT_FAKE_DRAG_BEGIN = 5;
+
+    /**
+     * A fake drag ended by {@link CarouselPagerAdapter}
+     */
+    public static final int EVENT_FAKE_DRAG_END = 6;
+
+    /**
+     * A tab image decoded by {@link TabImageLoader}
+     */
+    public static final int EVENT_IMAGE_DECODE = 7;
+
+    /**
+     * Number of events
+     */
+    public static final int EVENT_COUNT = 8;
+
+    /**
+     * Names returned by {@link #getEventName(int)}, indexed by event
+     */
+    private static final String[] EVENT_NAMES = {
+            "measure", "layout", "scrollChanged", "headerMove", "restoreAnimation",
+            "fakeDragBegin", "fakeDragEnd", "imageDecode"
+    };
+
+    /**
+     * Upper bounds, in milliseconds, of the frame duration histogram buckets.
+     * The last bucket holds every longer frame.
+     */
+    private static final int[] FRAME_BUCKET_BOUNDS = {
+            8, 16, 24, 32, 48, 64, 100
+    };
+
+    /**
+     * Number of buckets in the frame duration histogram
+     */
+    public static final int FRAME_BUCKET_COUNT = FRAME_BUCKET_BOUNDS.length + 1;
+
+    /**
+     * Number of frames without any carousel activity that end an interaction
+     */
+    private static final int IDLE_FRAMES = 10;
+
+    /**
+     * Events that mean the user is interacting with the carousel
+     */
+    private static final int INTERACTION_EVENTS = 1 << EVENT_SCROLL_CHANGED
+            | 1 << EVENT_HEADER_MOVE | 1 << EVENT_RESTORE_ANIMATION | 1 << EVENT_FAKE_DRAG_BEGIN
+            | 1 << EVENT_FAKE_DRAG_END;
+
+    private final long[] mCounts = new long[EVENT_COUNT];
+
+    private final long[] mDurations = new long[EVENT_COUNT];
+
+    private final int[] mFrameHistogram = new int[FRAME_BUCKET_COUNT];
+
+    private int mFrameCount;
+
+    private long mMaxFrameDuration;
+
+    /**
+     * Measures frame durations, null before Jelly Bean
+     */
+    private final Object mFrameTracker;
+
+    /**
+     * Notified when an interaction ends
+     */
+    private OnMetricsListener mListener;
+
+    /**
+     * Constructor of <code>CarouselMetrics</code>
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public CarouselMetrics() {
+        mFrameTracker = Utils.hasJellyBean() ? new FrameTracker() : null;
+    }
+
+    /**
+     * @return The start time to pass to {@link #end(int, long)}
+     */
+    public long begin() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records an event that started at the given time
+     *
+     * @param event One of the {@code EVENT_*} constants
+     * @param startNanos The value returned by {@link #begin()}
+     */
+    public void end(int event, long startNanos) {
+        mDurations[event] += System.nanoTime() - startNanos;
+        count(event);
+    }
+
+    /**
+     * Records an event without a duration
+     *
+     * @param event One of the {@code EVENT_*} constants
+     */
+    public void count(int event) {
+        mCounts[event]++;
+        if ((INTERACTION_EVENTS & 1 << event) != 0) {
+            onInteraction();
+        }
+    }
+
+    /**
+     * Records an event whose duration was measured elsewhere, for example on
+     * a background thread
+     *
+     * @param event One of the {@code EVENT_*} constants
+     * @param durationNanos The duration of the event
+     */
+    public void record(int event, long durationNanos) {
+        mDurations[event] += durationNanos;
+        count(event);
+    }
+
+    /**
+     * Marks the carousel as being interacted with, which records the
+     * duration of every frame until it's idle again
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void onInteraction() {
+        if (mFrameTracker != null) {
+            ((FrameTracker) mFrameTracker).start();
+        }
+    }
+
+    /**
+     * Copies the current values into the given snapshot without allocating
+     *
+     * @param out The {@link Snapshot} to fill
+     */
+    public void getSnapshot(Snapshot out) {
+        System.arraycopy(mCounts, 0, out.mCounts, 0, EVENT_COUNT);
+        System.arraycopy(mDurations, 0, out.mDurations, 0, EVENT_COUNT);
+        System.arraycopy(mFrameHistogram, 0, out.mFrameHistogram, 0, FRAME_BUCKET_COUNT);
+        out.mFrameCount = mFrameCount;
+        out.mMaxFrameDuration = mMaxFrameDuration;
+    }
+
+    /**
+     * Clears every value
+     */
+    public void reset() {
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            mCounts[i] = 0;
+            mDurations[i] = 0;
+        }
+        for (int i = 0; i < FRAME_BUCKET_COUNT; i++) {
+            mFrameHistogram[i] = 0;
+        }
+        mFrameCount = 0;
+        mMaxFrameDuration = 0;
+    }
+
+    /**
+     * Set the given {@link OnMetricsListener} to export the metrics after
+     * each interaction
+     */
+    public void setOnMetricsListener(OnMetricsListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @param bucket The index of a frame histogram bucket
+     * @return The upper bound of the bucket in milliseconds, or
+     *         {@link Integer#MAX_VALUE} for the last bucket
+     */
+    public static int getFrameBucketBound(int bucket) {
+        return bucket < FRAME_BUCKET_BOUNDS.length ? FRAME_BUCKET_BOUNDS[bucket]
+                : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @param event One of the {@code EVENT_*} constants
+     * @return A short name for the event
+     */
+    public static String getEventName(int event) {
+        return EVENT_NAMES[event];
+    }
+
+    /**
+     * Adds a frame to the histogram
+     */
+    private void recordFrame(long durationNanos) {
+        final long millis = durationNanos / 1000000L;
+        int bucket = 0;
+        while (bucket < FRAME_BUCKET_BOUNDS.length && millis >= FRAME_BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        mFrameHistogram[bucket]++;
+        mFrameCount++;
+        if (durationNanos > mMaxFrameDuration) {
+            mMaxFrameDuration = durationNanos;
+        }
+    }
+
+    /**
+     * Called once the carousel has been idle for a few frames
+     */
+    private void onInteractionFinished() {
+        if (mListener != null) {
+            mListener.onInteractionFinished(this);
+        }
+    }
+
+    /**
+     * Measures the time between consecutive frames while the carousel is
+     * being interacted with
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private final class FrameTracker implements Choreographer.FrameCallback {
+
+        private boolean mRunning;
+
+        private long mLastFrameTime;
+
+        private int mIdleFrames;
+
+        /**
+         * Starts tracking frames, or keeps tracking them for longer
+         */
+        void start() {
+            mIdleFrames = 0;
+            if (!mRunning) {
+                mRunning = true;
+                mLastFrameTime = 0;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mLastFrameTime != 0) {
+                recordFrame(frameTimeNanos - mLastFrameTime);
+            }
+            mLastFrameTime = frameTimeNanos;
+            if (++mIdleFrames > IDLE_FRAMES) {
+                mRunning = false;
+                onInteractionFinished();
+            } else {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    }
+
+    /**
+     * A copy of the metrics at one point in time. Allocate one and reuse it
+     * for every call to {@link CarouselMetrics#getSnapshot(Snapshot)}.
+     */
+    public static final class Snapshot {
+
+        private final long[] mCounts = new long[EVENT_COUNT];
+
+        private final long[] mDurations = new long[EVENT_COUNT];
+
+        private final int[] mFrameHistogram = new int[FRAME_BUCKET_COUNT];
+
+        private int mFrameCount;
+
+        private long mMaxFrameDuration;
+
+        /**
+         * @param event One of the {@code EVENT_*} constants
+         * @return The number of times the event happened
+         */
+        public long getCount(int event) {
+            return mCounts[event];
+        }
+
+        /**
+         * @param event One of the {@code EVENT_*} constants
+         * @return The total time spent in the event, in nanoseconds
+         */
+        public long getTotalDurationNanos(int event) {
+            return mDurations[event];
+        }
+
+        /**
+         * @param bucket The index of a frame histogram bucket
+         * @return The number of frames in the bucket
+         * @see CarouselMetrics#getFrameBucketBound(int)
+         */
+        public int getFrameCount(int bucket) {
+            return mFrameHistogram[bucket];
+        }
+
+        /**
+         * @return The number of frames recorded during interactions
+         */
+        public int getFrameCount() {
+            return mFrameCount;
+        }
+
+        /**
+         * @return The longest frame recorded, in nanoseconds
+         */
+        public long getMaxFrameDurationNanos() {
+            return mMaxFrameDuration;
+        }
+    }
+
+    /**
+     * Interface invoked when the user stops interacting with the carousel
+     */
+    public interface OnMetricsListener {
+
+        /**
+         * Called once the carousel has been idle for a few frames after an
+         * interaction
+         *
+         * @param metrics The {@link CarouselMetrics} to read with
+         *            {@link CarouselMetrics#getSnapshot(Snapshot)}
+         */
+        public void onInteractionFinished(CarouselMetrics metrics);
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.support.v4.view.PagerAdapter;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * A {@link PagerAdapter} whose pages are plain views rather than fragments,
+ * so switching between the carousel tabs never goes through a fragment
+ * transaction. Page views are pooled by type: a view removed by the pager is
+ * kept and handed back for the next page of the same type, and it's only
+ * bound again if it's shown at another position or the data changed.
+ * <p>
+ * The page the pager settles on is reported through
+ * {@link #onPageActivated(View, int)}. When the adapter is set with
+ * {@link CarouselPagerAdapter#setPageViewAdapter(CarouselPageViewAdapter)},
+ * the carousel selects the matching tab at the same time, including for the
+ * first page shown, which the pager never reports as selected.
+ */
+public abstract class CarouselPageViewAdapter extends PagerAdapter {
+
+    /**
+     * The pages currently added to the pager, by position
+     */
+    private final SparseArray<Page> mActivePages = new SparseArray<Page>();
+
+    /**
+     * The pages removed from the pager, by view type
+     */
+    private final SparseArray<ArrayList<Page>> mRecycledPages = new SparseArray<ArrayList<Page>>();
+
+    /**
+     * Incremented by {@link #notifyDataSetChanged()}, so pages bound before
+     * are bound again
+     */
+    private int mGeneration;
+
+    /**
+     * The page last passed to {@link #onPageActivated(View, int)}, or null
+     */
+    private Page mActivePage;
+
+    /**
+     * Selects the tab of the active page, or null if the adapter wasn't set
+     * through a {@link CarouselPagerAdapter}
+     */
+    private WeakReference<CarouselPagerAdapter> mCarouselPagerAdapter;
+
+    /**
+     * Creates the view of a page, called only when no view of the type can
+     * be reused
+     *
+     * @param container The {@link ViewGroup} the page will be added to
+     * @param viewType The type returned by {@link #getPageViewType(int)}
+     * @return A new page view
+     */
+    protected abstract View onCreatePageView(ViewGroup container, int viewType);
+
+    /**
+     * Shows the content of a page, called only when the view was last bound
+     * to another position or the data changed since
+     *
+     * @param view A view created by {@link #onCreatePageView(ViewGroup, int)}
+     * @param position The position of the page
+     */
+    protected abstract void onBindPageView(View view, int position);
+
+    /**
+     * @param position The position of a page
+     * @return The type of its view, between 0 and
+     *         {@link #getPageViewTypeCount()} - 1
+     */
+    public int getPageViewType(int position) {
+        return 0;
+    }
+
+    /**
+     * @return The number of page view types
+     */
+    public int getPageViewTypeCount() {
+        return 1;
+    }
+
+    /**
+     * Called when the pager settles on a page
+     *
+     * @param view The view of the page
+     * @param position The position of the page
+     */
+    protected void onPageActivated(View view, int position) {
+    }
+
+    /**
+     * Called when the pager leaves the page that was active
+     *
+     * @param view The view of the page
+     * @param position The position of the page
+     */
+    protected void onPageDeactivated(View view, int position) {
+    }
+
+    /**
+     * @param position The position of a page
+     * @return The view of the page, or null if it isn't added to the pager.
+     *         Never creates a view.
+     */
+    public View getPageView(int position) {
+        final Page page = mActivePages.get(position);
+        return page != null ? page.mView : null;
+    }
+
+    /**
+     * @return The position of the active page, or -1
+     */
+    public int getActivePosition() {
+        return mActivePage != null ? mActivePage.mPosition : -1;
+    }
+
+    /**
+     * Called by {@link CarouselPagerAdapter} when it sets this adapter on its
+     * pager
+     *
+     * @param pagerAdapter The {@link CarouselPagerAdapter} to report the
+     *            active page to
+     */
+    void setCarouselPagerAdapter(CarouselPagerAdapter pagerAdapter) {
+        mCarouselPagerAdapter = new WeakReference<CarouselPagerAdapter>(pagerAdapter);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object instantiateItem(ViewGroup container, int position) {
+        final int viewType = getPageViewType(position);
+        if (viewType < 0 || viewType >= getPageViewTypeCount()) {
+            throw new IllegalStateException("Invalid view type " + viewType + " for page "
+                    + position + ", there are " + getPageViewTypeCount() + " types");
+        }
+        final ArrayList<Page> recycled = mRecycledPages.get(viewType);
+        Page page = null;
+        if (recycled != null && !recycled.isEmpty()) {
+            // Prefer the view that last showed this position
+            for (int i = recycled.size() - 1; i >= 0; i--) {
+                if (recycled.get(i).mPosition == position) {
+                    page = recycled.remove(i);
+                    break;
+                }
+            }
+            if (page == null) {
+                page = recycled.remove(recycled.size() - 1);
+            }
+        }
+        if (page == null) {
+            page = new Page(onCreatePageView(container, viewType), viewType);
+        }
+        if (page.mPosition != position || page.mGeneration != mGeneration) {
+            onBindPageView(page.mView, position);
+            page.mPosition = position;
+            page.mGeneration = mGeneration;
+        }
+        container.addView(page.mView);
+        mActivePages.put(position, page);
+        return page;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroyItem(ViewGroup container, int position, Object object) {
+        final Page page = (Page) object;
+        container.removeView(page.mView);
+        mActivePages.remove(position);
+        if (page == mActivePage) {
+            onPageDeactivated(page.mView, position);
+            mActivePage = null;
+        }
+        ArrayList<Page> recycled = mRecycledPages.get(page.mViewType);
+        if (recycled == null) {
+            recycled = new ArrayList<Page>();
+            mRecycledPages.put(page.mViewType, recycled);
+        }
+        recycled.add(page);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setPrimaryItem(ViewGroup container, int position, Object object) {
+        final Page page = (Page) object;
+        if (page == mActivePage) {
+            return;
+        }
+        if (mActivePage != null) {
+            onPageDeactivated(mActivePage.mView, mActivePage.mPosition);
+        }
+        mActivePage = page;
+        if (page != null) {
+            onPageActivated(page.mView, position);
+            final CarouselPagerAdapter pagerAdapter = mCarouselPagerAdapter != null
+                    ? mCarouselPagerAdapter.get() : null;
+            if (pagerAdapter != null) {
+                pagerAdapter.onPageActivated(position);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isViewFromObject(View view, Object object) {
+        return ((Page) object).mView == view;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getItemPosition(Object object) {
+        final Page page = (Page) object;
+        if (page.mPosition >= getCount() || getPageViewType(page.mPosition) != page.mViewType) {
+            return POSITION_NONE;
+        }
+        return POSITION_UNCHANGED;
+    }
+
+    /**
+     * Binds the pages added to the pager again and makes the recycled ones
+     * bind before they're reused
+     */
+    @Override
+    public void notifyDataSetChanged() {
+        mGeneration++;
+        for (int i = 0; i < mActivePages.size(); i++) {
+            final Page page = mActivePages.valueAt(i);
+            if (page.mPosition < getCount() && getPageViewType(page.mPosition) == page.mViewType) {
+                onBindPageView(page.mView, page.mPosition);
+                page.mGeneration = mGeneration;
+            }
+        }
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * A page view and what it was last bound to
+     */
+    private static final class Page {
+
+        private final View mView;
+
+        private final int mViewType;
+
+        /**
+         * The position the view was last bound to, or -1
+         */
+        private int mPosition = -1;
+
+        /**
+         * The value of {@code #mGeneration} when the view was bound
+         */
+        private int mGeneration = -1;
+
+        /**
+         * @param view The page view
+         * @param viewType The type of the view
+         */
+        public Page(View view, int viewType) {
+            mView = view;
+            mViewType = viewType;
+        }
+    }
+}
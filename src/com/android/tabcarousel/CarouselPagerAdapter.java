@@ -16,8 +16,10 @@
 
 package com.android.tabcarousel;
 
+import android.support.v4.view.ViewConfigurationCompat;
 import android.support.v4.view.ViewPager;
 import android.support.v4.view.ViewPager.OnPageChangeListener;
+import android.view.ViewConfiguration;
 
 import java.lang.ref.WeakReference;
 
@@ -36,6 +38,39 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
      */
     private final CarouselContainer mCarousel;
 
+    /**
+     * Distance the carousel must be dragged to keep a warmed up page
+     */
+    private final int mWarmUpThreshold;
+
+    /**
+     * Used instead of allocating an empty listener array
+     */
+    private static final OnPageChangeListener[] NO_PAGE_CHANGE_LISTENERS = new OnPageChangeListener[0];
+
+    /**
+     * Interfaces the page changes of the {@link ViewPager} are passed on to.
+     * The pager only holds one listener, this adapter, so anything else
+     * interested in page changes is added here. The array is replaced rather
+     * than modified, so events are dispatched without copying.
+     */
+    private OnPageChangeListener[] mPageChangeListeners = NO_PAGE_CHANGE_LISTENERS;
+
+    /**
+     * Notified when a page should start or stop being prepared
+     */
+    private OnPageWarmUpListener mWarmUpListener;
+
+    /**
+     * The position of the page currently being warmed up, or -1
+     */
+    private int mWarmUpPosition = -1;
+
+    /**
+     * The horizontal scroll position of the carousel on touch down
+     */
+    private int mWarmUpScrollX;
+
     /**
      * Constructor for <code>ViewPagerAdapter</code>
      * 
@@ -49,6 +84,46 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
         viewPager.setOnPageChangeListener(this);
         mCarousel = carouselHeader;
         mCarousel.setListener(this);
+        mCarousel.setPagerConnected();
+        mWarmUpThreshold = ViewConfigurationCompat.getScaledPagingTouchSlop(ViewConfiguration
+                .get(viewPager.getContext()));
+    }
+
+    /**
+     * Adds an {@link OnPageChangeListener} notified of the page changes of the
+     * {@link ViewPager}. Use this instead of
+     * {@link ViewPager#setOnPageChangeListener(OnPageChangeListener)}, which
+     * would disconnect the pager from the carousel.
+     */
+    public void addOnPageChangeListener(OnPageChangeListener listener) {
+        mPageChangeListeners = Utils.appendElement(mPageChangeListeners, listener);
+    }
+
+    /**
+     * Removes an {@link OnPageChangeListener} added with
+     * {@link #addOnPageChangeListener(OnPageChangeListener)}
+     */
+    public void removeOnPageChangeListener(OnPageChangeListener listener) {
+        mPageChangeListeners = Utils.removeElement(mPageChangeListeners, listener);
+    }
+
+    /**
+     * Sets the adapter of the {@link ViewPager}, so the carousel selects the
+     * tab of each page the pager settles on, including the first one
+     *
+     * @param adapter The {@link CarouselPageViewAdapter} providing the pages
+     */
+    public void setPageViewAdapter(CarouselPageViewAdapter adapter) {
+        adapter.setCarouselPagerAdapter(this);
+        mReference.get().setAdapter(adapter);
+    }
+
+    /**
+     * Set the given {@link OnPageWarmUpListener} to prepare pages on touch
+     * down
+     */
+    public void setOnPageWarmUpListener(OnPageWarmUpListener warmUpListener) {
+        mWarmUpListener = warmUpListener;
     }
 
     /**
@@ -56,8 +131,24 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
      */
     @Override
     public void onPageScrollStateChanged(int state) {
+        if (state == ViewPager.SCROLL_STATE_DRAGGING) {
+            // Hold autoplay back while the user swipes the pages
+            mCarousel.setPagerDragging(true);
+        } else if (state == ViewPager.SCROLL_STATE_IDLE) {
+            mCarousel.setPagerDragging(false);
+        }
         if (state == ViewPager.SCROLL_STATE_IDLE) {
-            mCarousel.restoreYCoordinate(75, mReference.get().getCurrentItem());
+            final int currentItem = mReference.get().getCurrentItem();
+            mCarousel.restoreYCoordinate(75, currentItem);
+            // The pager settled somewhere else, the page is no longer needed
+            if (mWarmUpPosition != -1 && mWarmUpPosition != currentItem) {
+                cancelWarmUp();
+            }
+            mWarmUpPosition = -1;
+        }
+        final OnPageChangeListener[] listeners = mPageChangeListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onPageScrollStateChanged(state);
         }
     }
 
@@ -66,13 +157,15 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
      */
     @Override
     public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
-        if (mReference.get().isFakeDragging()) {
-            return;
+        if (!mReference.get().isFakeDragging()) {
+            final int scrollToX = (int) ((position + positionOffset) * mCarousel
+                    .getAllowedHorizontalScrollLength());
+            mCarousel.scrollTo(scrollToX, 0);
+        }
+        final OnPageChangeListener[] listeners = mPageChangeListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onPageScrolled(position, positionOffset, positionOffsetPixels);
         }
-
-        final int scrollToX = (int) ((position + positionOffset) * mCarousel
-                .getAllowedHorizontalScrollLength());
-        mCarousel.scrollTo(scrollToX, 0);
     }
 
     /**
@@ -81,6 +174,10 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
     @Override
     public void onPageSelected(int position) {
         mCarousel.setCurrentTab(position);
+        final OnPageChangeListener[] listeners = mPageChangeListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onPageSelected(position);
+        }
     }
 
     /**
@@ -90,7 +187,12 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
     public void onTouchDown() {
         if (!mReference.get().isFakeDragging()) {
             mReference.get().beginFakeDrag();
+            final CarouselMetrics metrics = mCarousel.getMetrics();
+            if (metrics != null) {
+                metrics.count(CarouselMetrics.EVENT_FAKE_DRAG_BEGIN);
+            }
         }
+        warmUp();
     }
 
     /**
@@ -100,6 +202,14 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
     public void onTouchUp() {
         if (mReference.get().isFakeDragging()) {
             mReference.get().endFakeDrag();
+            final CarouselMetrics metrics = mCarousel.getMetrics();
+            if (metrics != null) {
+                metrics.count(CarouselMetrics.EVENT_FAKE_DRAG_END);
+            }
+        }
+        if (mWarmUpPosition != -1
+                && Math.abs(mCarousel.getScrollX() - mWarmUpScrollX) < mWarmUpThreshold) {
+            cancelWarmUp();
         }
     }
 
@@ -117,7 +227,56 @@ public class CarouselPagerAdapter implements OnPageChangeListener, OnCarouselLis
     @Override
     public void onCarouselScrollChanged(int l, int t, int oldl, int oldt) {
         if (mReference.get().isFakeDragging()) {
+            CarouselTrace.beginSection("CarouselPagerAdapter#fakeDragBy");
+            final CarouselTrace trace = mCarousel.getTrace();
+            if (trace != null) {
+                trace.record(CarouselTrace.EVENT_FAKE_DRAG, oldl - l);
+            }
             mReference.get().fakeDragBy(oldl - l);
+            CarouselTrace.endSection();
+        }
+    }
+
+    /**
+     * Called by {@link CarouselPageViewAdapter} when the pager settles on a
+     * page
+     *
+     * @param position The position of the page
+     */
+    void onPageActivated(int position) {
+        if (position <= CarouselContainer.TAB_INDEX_SECOND
+                && position != mCarousel.getCurrentTab()) {
+            mCarousel.setCurrentTab(position);
+        }
+    }
+
+    /**
+     * Notifies {@link #mWarmUpListener} of the page the user is about to drag
+     * to. The carousel reports a touch down from both its touch listener and
+     * {@code onInterceptTouchEvent}, so only the first one is used.
+     */
+    private void warmUp() {
+        if (mWarmUpListener == null || mWarmUpPosition != -1) {
+            return;
+        }
+        final ViewPager viewPager = mReference.get();
+        if (viewPager.getAdapter() == null || viewPager.getAdapter().getCount() < 2) {
+            return;
+        }
+        mWarmUpPosition = viewPager.getCurrentItem() == CarouselContainer.TAB_INDEX_FIRST
+                ? CarouselContainer.TAB_INDEX_SECOND : CarouselContainer.TAB_INDEX_FIRST;
+        mWarmUpScrollX = mCarousel.getScrollX();
+        mWarmUpListener.onWarmUpPage(mWarmUpPosition);
+    }
+
+    /**
+     * Tells {@link #mWarmUpListener} to stop preparing the warmed up page
+     */
+    private void cancelWarmUp() {
+        final int position = mWarmUpPosition;
+        mWarmUpPosition = -1;
+        if (mWarmUpListener != null) {
+            mWarmUpListener.onCancelWarmUp(position);
         }
     }
 
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+
+/**
+ * Describes how much work the carousel may do to look its best. The profile
+ * returned by {@link #forDevice(Context)} trades quality for smoothness on
+ * low-RAM devices; every behavior can still be overridden individually before
+ * passing the profile to {@link CarouselContainer#setPerformanceProfile}.
+ */
+public class CarouselPerformanceProfile {
+
+    /**
+     * Memory classes at or below this are considered low-end
+     */
+    private static final int LOW_END_MEMORY_CLASS = 24;
+
+    /**
+     * The largest dimension tab images are decoded at on low-end devices
+     */
+    private static final int LOW_END_MAX_DECODE_SIZE = 480;
+
+    /**
+     * True to decode opaque tab images as RGB_565
+     */
+    private boolean mOpaqueImagesRgb565;
+
+    /**
+     * The largest dimension tab images are decoded at, or 0 for no limit
+     */
+    private int mMaxDecodeSize;
+
+    /**
+     * True to dim the unselected tab with a fixed alpha instead of following
+     * the scroll position
+     */
+    private boolean mFixedDimOverlay;
+
+    /**
+     * True to animate the vertical position of the carousel
+     */
+    private boolean mAnimateYMoves = true;
+
+    /**
+     * @return A profile that doesn't trade any quality for speed
+     */
+    public static CarouselPerformanceProfile getDefault() {
+        return new CarouselPerformanceProfile();
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A profile suited to the device, which is the default profile
+     *         unless the device is low-end
+     */
+    public static CarouselPerformanceProfile forDevice(Context context) {
+        final CarouselPerformanceProfile profile = new CarouselPerformanceProfile();
+        if (isLowEndDevice(context)) {
+            profile.mOpaqueImagesRgb565 = true;
+            profile.mMaxDecodeSize = LOW_END_MAX_DECODE_SIZE;
+            profile.mFixedDimOverlay = true;
+            profile.mAnimateYMoves = false;
+        }
+        return profile;
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @return True if the device reports itself as low-RAM or has a small
+     *         memory class, false otherwise
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public static boolean isLowEndDevice(Context context) {
+        final ActivityManager activityManager = (ActivityManager) context
+                .getSystemService(Context.ACTIVITY_SERVICE);
+        if (Utils.hasKitKat() && activityManager.isLowRamDevice()) {
+            return true;
+        }
+        return activityManager.getMemoryClass() <= LOW_END_MEMORY_CLASS;
+    }
+
+    /**
+     * @param rgb565 True to decode opaque tab images as RGB_565, halving their
+     *            size. Images with transparency are always decoded as
+     *            ARGB_8888.
+     */
+    public void setOpaqueImagesRgb565(boolean rgb565) {
+        mOpaqueImagesRgb565 = rgb565;
+    }
+
+    /**
+     * @return True if opaque tab images are decoded as RGB_565
+     */
+    public boolean isOpaqueImagesRgb565() {
+        return mOpaqueImagesRgb565;
+    }
+
+    /**
+     * @param maxDecodeSize The largest dimension tab images are decoded at, or
+     *            0 for no limit. Larger tabs scale the image up.
+     */
+    public void setMaxDecodeSize(int maxDecodeSize) {
+        mMaxDecodeSize = maxDecodeSize;
+    }
+
+    /**
+     * @return The largest dimension tab images are decoded at, or 0
+     */
+    public int getMaxDecodeSize() {
+        return mMaxDecodeSize;
+    }
+
+    /**
+     * @param fixedDimOverlay True to dim the unselected tab with a fixed alpha
+     *            that only changes with the selection, false to update the
+     *            dim overlays on every scroll
+     */
+    public void setFixedDimOverlay(boolean fixedDimOverlay) {
+        mFixedDimOverlay = fixedDimOverlay;
+    }
+
+    /**
+     * @return True if the unselected tab is dimmed with a fixed alpha
+     */
+    public boolean isFixedDimOverlay() {
+        return mFixedDimOverlay;
+    }
+
+    /**
+     * @param animateYMoves True to animate the vertical position of the
+     *            carousel, false to position it immediately
+     */
+    public void setAnimateYMoves(boolean animateYMoves) {
+        mAnimateYMoves = animateYMoves;
+    }
+
+    /**
+     * @return True if the vertical position of the carousel is animated
+     */
+    public boolean isAnimateYMoves() {
+        return mAnimateYMoves;
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+
+/**
+ * A small render of a {@link CarouselContainer} kept in app storage between
+ * launches. Once the carousel has settled, it saves a downsampled copy of what
+ * it draws along with its size and selected tab. On the next launch the
+ * carousel draws that copy, stretched to the size computed from
+ * {@code tab_width_screen_percentage} and
+ * {@code tab_height_screen_percentage}, until its tab images are ready, so the
+ * header has content from the first frame. A snapshot of other content is
+ * never drawn as long as each content has its own key, see
+ * {@link #setContentKey(String)}.
+ * <p>
+ * The file is only read and written in the background.
+ */
+public class CarouselSnapshot {
+
+    private static final String TAG = "CarouselSnapshot";
+
+    /**
+     * How much smaller than the carousel the snapshot is
+     */
+    private static final int DOWNSAMPLE = 4;
+
+    /**
+     * Quality used to compress the snapshot
+     */
+    private static final int COMPRESS_QUALITY = 80;
+
+    /**
+     * Suffix of the file while it's being written
+     */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Written first so files saved in another format are ignored
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * The file holding the snapshot
+     */
+    private final File mFile;
+
+    /**
+     * The carousel waiting for the snapshot to be loaded, or null
+     */
+    private WeakReference<CarouselContainer> mContainer;
+
+    /**
+     * True once the snapshot has been requested
+     */
+    private boolean mLoadStarted;
+
+    /**
+     * The loaded snapshot, or null
+     */
+    private Bitmap mBitmap;
+
+    /**
+     * The size of the carousel and its selected tab when the loaded snapshot
+     * was taken
+     */
+    private int mWidth, mHeight, mTab;
+
+    /**
+     * The key of the content shown when the loaded snapshot was taken
+     */
+    private String mKey;
+
+    /**
+     * The key of the content shown now
+     */
+    private String mContentKey = "";
+
+    /**
+     * True while a snapshot is being saved
+     */
+    private boolean mSaving;
+
+    /**
+     * @param context The {@link Context} to use
+     * @param name The name of the snapshot, unique to each carousel of the
+     *            app
+     */
+    public CarouselSnapshot(Context context, String name) {
+        mFile = new File(context.getFilesDir(), "carousel_snapshot_" + name);
+    }
+
+    /**
+     * Sets the key of the content shown by the carousel, for example the id
+     * of the item it belongs to. It's saved along with each snapshot, and a
+     * snapshot saved with another key is never drawn.
+     * 
+     * @param key The key of the content, or null if the carousel always shows
+     *            the same content
+     */
+    public void setContentKey(String key) {
+        mContentKey = key != null ? key : "";
+    }
+
+    /**
+     * Starts reading the snapshot saved by the previous launch. Call this as
+     * early as possible, for example before setting the content view, so it's
+     * ready when the carousel draws for the first time.
+     */
+    public void preload() {
+        if (!mLoadStarted) {
+            mLoadStarted = true;
+            Utils.execute(new LoadTask(this));
+        }
+    }
+
+    /**
+     * Deletes the saved snapshot, for example when the content of the
+     * carousel changed for good
+     */
+    public void clear() {
+        mBitmap = null;
+        Utils.execute(new AsyncTask<Void, Void, Void>() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            protected Void doInBackground(Void... params) {
+                synchronized (mFile) {
+                    mFile.delete();
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Called by {@link CarouselContainer} when it starts using the snapshot
+     *
+     * @param container The {@link CarouselContainer} to invalidate once the
+     *            snapshot is loaded
+     */
+    void attach(CarouselContainer container) {
+        mContainer = new WeakReference<CarouselContainer>(container);
+        preload();
+    }
+
+    /**
+     * @param width The width of the carousel
+     * @param height The height of the carousel
+     * @param tab The selected tab
+     * @return The loaded snapshot if it was taken at the same size, with the
+     *         same tab selected and of the same content, null otherwise
+     */
+    Bitmap getPlaceholder(int width, int height, int tab) {
+        if (mBitmap == null || mWidth != width || mHeight != height || mTab != tab
+                || !mContentKey.equals(mKey)) {
+            return null;
+        }
+        return mBitmap;
+    }
+
+    /**
+     * Called by {@link CarouselContainer} once it draws real content, the
+     * loaded snapshot isn't needed anymore
+     */
+    void releasePlaceholder() {
+        mBitmap = null;
+    }
+
+    /**
+     * Renders a downsampled copy of the carousel and saves it in the
+     * background. Must be called on the UI thread.
+     *
+     * @param container The {@link CarouselContainer} to render
+     * @param tab The selected tab
+     */
+    void capture(CarouselContainer container, int tab) {
+        final int width = container.getWidth(), height = container.getHeight();
+        if (mSaving || width <= 0 || height <= 0) {
+            return;
+        }
+        final Bitmap bitmap = Bitmap.createBitmap(Math.max(1, width / DOWNSAMPLE),
+                Math.max(1, height / DOWNSAMPLE), Bitmap.Config.RGB_565);
+        final Canvas canvas = new Canvas(bitmap);
+        canvas.scale(bitmap.getWidth() / (float) width, bitmap.getHeight() / (float) height);
+        // draw() doesn't apply the scroll position, the parent does
+        canvas.translate(-container.getScrollX(), -container.getScrollY());
+        container.draw(canvas);
+        mSaving = true;
+        Utils.execute(new SaveTask(this, bitmap, width, height, tab, mContentKey));
+    }
+
+    /**
+     * Reads the snapshot file
+     *
+     * @param task Receives the snapshot
+     * @return True if a snapshot was read
+     */
+    private boolean read(LoadTask task) {
+        synchronized (mFile) {
+            if (!mFile.isFile()) {
+                return false;
+            }
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+                if (in.readInt() != FORMAT_VERSION) {
+                    return false;
+                }
+                final int width = in.readInt(), height = in.readInt(), tab = in.readInt();
+                final String key = in.readUTF();
+                final BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inPreferredConfig = Bitmap.Config.RGB_565;
+                final Bitmap bitmap = BitmapFactory.decodeStream(in, null, options);
+                if (bitmap == null) {
+                    return false;
+                }
+                task.mWidth = width;
+                task.mHeight = height;
+                task.mTab = tab;
+                task.mKey = key;
+                task.mBitmap = bitmap;
+                return true;
+            } catch (final IOException e) {
+                return false;
+            } finally {
+                Utils.closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot file, replacing the previous one only once the new
+     * one is complete
+     */
+    private void write(Bitmap bitmap, int width, int height, int tab, String key) {
+        synchronized (mFile) {
+            final File tmp = new File(mFile.getPath() + TMP_SUFFIX);
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(width);
+                out.writeInt(height);
+                out.writeInt(tab);
+                out.writeUTF(key);
+                if (!bitmap.compress(CompressFormat.JPEG, COMPRESS_QUALITY, out)) {
+                    throw new IOException("Unable to compress the snapshot");
+                }
+                out.close();
+                out = null;
+                if (!tmp.renameTo(mFile)) {
+                    throw new IOException("Unable to rename " + tmp);
+                }
+            } catch (final IOException e) {
+                Log.w(TAG, "Failed to save " + mFile, e);
+                Utils.closeQuietly(out);
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads the snapshot in the background
+     */
+    private static final class LoadTask extends AsyncTask<Void, Void, Boolean> {
+
+        private final CarouselSnapshot mSnapshot;
+
+        /**
+         * The snapshot read in the background
+         */
+        private Bitmap mBitmap;
+
+        private int mWidth, mHeight, mTab;
+
+        private String mKey;
+
+        /**
+         * Constructor of <code>LoadTask</code>
+         */
+        LoadTask(CarouselSnapshot snapshot) {
+            mSnapshot = snapshot;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Boolean doInBackground(Void... params) {
+            return mSnapshot.read(this);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void onPostExecute(Boolean result) {
+            if (!result) {
+                return;
+            }
+            mSnapshot.mBitmap = mBitmap;
+            mSnapshot.mWidth = mWidth;
+            mSnapshot.mHeight = mHeight;
+            mSnapshot.mTab = mTab;
+            mSnapshot.mKey = mKey;
+            final CarouselContainer container = mSnapshot.mContainer != null ? mSnapshot.mContainer
+                    .get() : null;
+            if (container != null) {
+                container.onSnapshotLoaded();
+            }
+        }
+    }
+
+    /**
+     * Saves a rendered snapshot in the background
+     */
+    private static final class SaveTask extends AsyncTask<Void, Void, Void> {
+
+        private final CarouselSnapshot mSnapshot;
+
+        private final Bitmap mBitmap;
+
+        private final int mWidth;
+
+        private final int mHeight;
+
+        private final int mTab;
+
+        private final String mKey;
+
+        /**
+         * Constructor of <code>SaveTask</code>
+         */
+        SaveTask(CarouselSnapshot snapshot, Bitmap bitmap, int width, int height, int tab,
+                String key) {
+            mSnapshot = snapshot;
+            mBitmap = bitmap;
+            mWidth = width;
+            mHeight = height;
+            mTab = tab;
+            mKey = key;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Void doInBackground(Void... params) {
+            mSnapshot.write(mBitmap, mWidth, mHeight, mTab, mKey);
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void onPostExecute(Void result) {
+            mSnapshot.mSaving = false;
+            mBitmap.recycle();
+        }
+    }
+}
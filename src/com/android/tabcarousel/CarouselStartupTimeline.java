@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+/**
+ * Timestamps of the phases a {@link CarouselContainer} goes through while it
+ * is brought up, used to tell how much of a screen's time to first frame is
+ * spent in the carousel. Each phase is only recorded the first time it
+ * happens.
+ * <p>
+ * Times come from {@link System#nanoTime()}, which uses the same clock as
+ * {@code SystemClock.uptimeMillis()}.
+ */
+public class CarouselStartupTimeline {
+
+    /**
+     * The constructor of {@link CarouselContainer} was entered
+     */
+    public static final int PHASE_CONSTRUCTION = 0;
+
+    /**
+     * The carousel dimensions were resolved from the resources
+     */
+    public static final int PHASE_RESOURCES_RESOLVED = 1;
+
+    /**
+     * {@code onFinishInflate} completed
+     */
+    public static final int PHASE_FINISH_INFLATE = 2;
+
+    /**
+     * The first {@code onMeasure} completed
+     */
+    public static final int PHASE_FIRST_MEASURE = 3;
+
+    /**
+     * The first {@code onLayout} completed
+     */
+    public static final int PHASE_FIRST_LAYOUT = 4;
+
+    /**
+     * The first tab image was decoded in the background
+     */
+    public static final int PHASE_FIRST_IMAGE_DECODED = 5;
+
+    /**
+     * The first tab image, or its preview, was applied to a tab
+     */
+    public static final int PHASE_FIRST_IMAGE_APPLIED = 6;
+
+    /**
+     * The carousel scrolled to the current tab after its first layout
+     */
+    public static final int PHASE_POST_LAYOUT_SCROLL = 7;
+
+    /**
+     * The carousel was drawn for the first time
+     */
+    public static final int PHASE_FIRST_DRAW = 8;
+
+    /**
+     * The carousel was drawn with every requested tab image in full quality
+     */
+    public static final int PHASE_FULLY_DRAWN = 9;
+
+    /**
+     * Number of phases
+     */
+    public static final int PHASE_COUNT = 10;
+
+    /**
+     * Names used by {@link #toString()}, indexed by phase
+     */
+    private static final String[] PHASE_NAMES = {
+            "construction", "resources", "finishInflate", "measure", "layout", "imageDecoded",
+            "imageApplied", "postLayoutScroll", "firstDraw", "fullyDrawn"
+    };
+
+    /**
+     * The time each phase was reached, 0 until then
+     */
+    private final long[] mTimes = new long[PHASE_COUNT];
+
+    /**
+     * Records the current time for the given phase, unless it was already
+     * reached
+     *
+     * @param phase One of the {@code PHASE_*} constants
+     */
+    void mark(int phase) {
+        if (mTimes[phase] == 0) {
+            mTimes[phase] = System.nanoTime();
+        }
+    }
+
+    /**
+     * @param phase One of the {@code PHASE_*} constants
+     * @return True if the phase was reached
+     */
+    public boolean hasReached(int phase) {
+        return mTimes[phase] != 0;
+    }
+
+    /**
+     * @param phase One of the {@code PHASE_*} constants
+     * @return The time the phase was reached in nanoseconds, or 0
+     */
+    public long getTimeNanos(int phase) {
+        return mTimes[phase];
+    }
+
+    /**
+     * @param phase One of the {@code PHASE_*} constants
+     * @return Milliseconds between construction and the phase, or -1 if the
+     *         phase wasn't reached
+     */
+    public long getElapsedMillis(int phase) {
+        if (mTimes[phase] == 0) {
+            return -1;
+        }
+        return (mTimes[phase] - mTimes[PHASE_CONSTRUCTION]) / 1000000L;
+    }
+
+    /**
+     * @param phase One of the {@code PHASE_*} constants
+     * @return A short name for the phase
+     */
+    public static String getPhaseName(int phase) {
+        return PHASE_NAMES[phase];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("CarouselStartupTimeline{");
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(PHASE_NAMES[i]).append('=');
+            if (hasReached(i)) {
+                builder.append(getElapsedMillis(i)).append("ms");
+            } else {
+                builder.append('-');
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -18,7 +18,14 @@ package com.android.tabcarousel;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.View;
 import android.widget.ImageView;
@@ -40,7 +47,17 @@ public class CarouselTab extends FrameLayoutWithOverlay {
     /**
      * The label of each tab in the carousel
      */
-    private TextView mLabel;
+    private TabLabelView mLabel;
+
+    /**
+     * Lays the label out in the background, may be null
+     */
+    private TabLabelLayoutCache mLabelLayoutCache;
+
+    /**
+     * The width of the label as measured by {@link CarouselContainer}
+     */
+    private int mLabelWidth;
 
     /**
      * The layer placed over {@code #mCarouselImage}
@@ -52,6 +69,135 @@ public class CarouselTab extends FrameLayoutWithOverlay {
      */
     private View mColorstrip;
 
+    /**
+     * The translucent background behind {@code #mLabel}
+     */
+    private View mLabelScrim;
+
+    /**
+     * Tints {@code #mColorstrip} and {@code #mLabelScrim} after the image,
+     * may be null
+     */
+    private TabColorExtractor mColorExtractor;
+
+    /**
+     * The key of the image the colors were requested for, or null
+     */
+    private String mColorKey;
+
+    /**
+     * The colors applied to the tab, or null
+     */
+    private TabColorExtractor.TabColors mColors;
+
+    /**
+     * The background of {@code #mColorstrip} before it was tinted
+     */
+    private Drawable mDefaultColorstripBackground;
+
+    /**
+     * Blurs the image behind {@code #mLabelScrim}, may be null
+     */
+    private TabScrimBlurrer mScrimBlurrer;
+
+    /**
+     * The key of the image the blurred scrim was requested for, or null
+     */
+    private String mScrimKey;
+
+    /**
+     * The blurred label strip drawn by {@code #mLabelScrim}, or null
+     */
+    private Bitmap mFrostedScrim;
+
+    /**
+     * Loads {@code #mImageResId} in the background
+     */
+    private TabImageLoader mImageLoader;
+
+    /**
+     * The resource identifier of the image to load, or 0
+     */
+    private int mImageResId;
+
+    /**
+     * The size the tab image is decoded at: the size measured by
+     * {@link CarouselContainer}, taller by the parallax range while parallax
+     * is on
+     */
+    private int mImageWidth, mImageHeight;
+
+    /**
+     * The key of the image shown or being loaded, or null
+     */
+    private String mImageKey;
+
+    /**
+     * The task loading {@code #mImageKey}, or null
+     */
+    private TabImageLoader.DecodeTask mImageTask;
+
+    /**
+     * Shows the loaded images, reused for every image
+     */
+    private CrossfadeDrawable mCrossfade;
+
+    /**
+     * True while {@code #mCrossfade} shows a preview of {@code #mImageKey}
+     */
+    private boolean mShowingPreview;
+
+    /**
+     * When the image was requested, or 0 once it has been shown
+     */
+    private long mImageRequestTime;
+
+    /**
+     * True if the loaded image was released to save memory
+     */
+    private boolean mImageReleased;
+
+    /**
+     * The continuously updated content shown instead of an image, or null
+     */
+    private TabLiveContent mLiveContent;
+
+    /**
+     * The rate {@code #mLiveContent} is allowed to update at
+     */
+    private int mLiveContentRate = TabLiveContent.RATE_FULL;
+
+    /**
+     * The value of the dim overlay
+     */
+    private float mAlphaLayerValue;
+
+    /**
+     * How far the image moves down when the carousel is fully collapsed, 0
+     * if parallax is off
+     */
+    private float mParallaxRange;
+
+    /**
+     * How far the image is currently moved down
+     */
+    private float mParallaxOffset;
+
+    /**
+     * The matrix of the image while parallax is on, reused for every move
+     */
+    private final Matrix mParallaxMatrix = new Matrix();
+
+    /**
+     * Records image decodes, may be null
+     */
+    private CarouselMetrics mMetrics;
+
+    /**
+     * Notified when images are decoded and shown
+     */
+    private OnTabImageListener mOnTabImageListener;
+
     /**
      * @param context The {@link Context} to use
      * @param attrs The attributes of the XML tag that is inflating the view
@@ -68,9 +214,10 @@ public class CarouselTab extends FrameLayoutWithOverlay {
         super.onFinishInflate();
         // Initiate the tab
         mCarouselImage = (ImageView) findViewById(R.id.carousel_tab_image);
-        mLabel = (TextView) findViewById(R.id.carousel_tab_label);
+        mLabel = (TabLabelView) findViewById(R.id.carousel_tab_label);
         mAlphaLayer = findViewById(R.id.carousel_tab_alpha_overlay);
         mColorstrip = findViewById(R.id.carousel_tab_colorstrip);
+        mLabelScrim = findViewById(R.id.carousel_tab_label_scrim);
         // Set the alpha layer
         setAlphaLayer(mAlphaLayer);
     }
@@ -91,13 +238,154 @@ public class CarouselTab extends FrameLayoutWithOverlay {
         setSelectedState(selected);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        if (changed) {
+            updateImageMatrix();
+        }
+    }
+
+    /**
+     * @param range How far the image moves down when the carousel is fully
+     *            collapsed, or 0 to turn parallax off
+     */
+    private void setParallaxRange(float range) {
+        if (mParallaxRange == range) {
+            return;
+        }
+        final float progress = mParallaxRange > 0 ? mParallaxOffset / mParallaxRange : 0.0f;
+        final boolean wasEnabled = mParallaxRange > 0;
+        mParallaxRange = range;
+        mParallaxOffset = progress * range;
+        if (range > 0 && !wasEnabled) {
+            mCarouselImage.setScaleType(ImageView.ScaleType.MATRIX);
+        } else if (range <= 0 && wasEnabled) {
+            mCarouselImage.setScaleType(ImageView.ScaleType.CENTER_CROP);
+        }
+        updateImageMatrix();
+    }
+
+    /**
+     * Called by {@link CarouselContainer} on every vertical move
+     * 
+     * @param progress 0 when the carousel is fully expanded, 1 when it's
+     *            collapsed
+     */
+    void setParallaxProgress(float progress) {
+        if (mParallaxRange <= 0) {
+            return;
+        }
+        final float offset = progress * mParallaxRange;
+        if (mParallaxOffset != offset) {
+            mParallaxOffset = offset;
+            updateImageMatrix();
+        }
+    }
+
+    /**
+     * Moves the image down by the parallax offset. A loaded image is decoded
+     * taller by the parallax range, so it's only translated; any other image
+     * is center cropped like {@link ImageView.ScaleType#CENTER_CROP}, scaled
+     * up so it still covers the tab once moved down by the whole range.
+     */
+    private void updateImageMatrix() {
+        if (mParallaxRange <= 0) {
+            return;
+        }
+        final Drawable drawable = mCarouselImage.getDrawable();
+        final int viewWidth = mCarouselImage.getWidth() - mCarouselImage.getPaddingLeft()
+                - mCarouselImage.getPaddingRight();
+        final int viewHeight = mCarouselImage.getHeight() - mCarouselImage.getPaddingTop()
+                - mCarouselImage.getPaddingBottom();
+        if (drawable == null || viewWidth <= 0 || viewHeight <= 0
+                || drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0) {
+            return;
+        }
+        final int width = drawable.getIntrinsicWidth(), height = drawable.getIntrinsicHeight();
+        final float scale;
+        if (width == viewWidth && height >= viewHeight + mParallaxRange) {
+            // Decoded with the range, scaling would only blur it
+            scale = 1.0f;
+        } else {
+            scale = Math.max(viewWidth / (float) width, (viewHeight + mParallaxRange) / height);
+        }
+        // Centered at half of the range, so moving down by the whole range
+        // never uncovers the top of the tab
+        final float dx = (viewWidth - width * scale) / 2;
+        final float dy = (viewHeight - height * scale) / 2 - mParallaxRange / 2;
+        if (scale == 1.0f) {
+            mParallaxMatrix.setTranslate(Math.round(dx), Math.round(dy + mParallaxOffset));
+        } else {
+            mParallaxMatrix.setScale(scale, scale);
+            mParallaxMatrix.postTranslate(Math.round(dx), Math.round(dy + mParallaxOffset));
+        }
+        mCarouselImage.setImageMatrix(mParallaxMatrix);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAlphaLayerValue(float alpha) {
+        mAlphaLayerValue = alpha;
+        super.setAlphaLayerValue(alpha);
+    }
+
+    /**
+     * @return The value of the dim overlay, between 0 and 1
+     */
+    float getAlphaLayerValue() {
+        return mAlphaLayerValue;
+    }
+
     /**
      * Sets the label for a tab
      * 
      * @param label The string to set as the label
      */
     public void setLabel(String label) {
-        mLabel.setText(label);
+        if (TextUtils.equals(mLabel.getText(), label)) {
+            return;
+        }
+        if (mLabelLayoutCache != null && mLabelWidth > 0) {
+            mLabel.setPreparedText(label, mLabelLayoutCache, mLabelWidth);
+        } else {
+            mLabel.setText(label);
+        }
+    }
+
+    /**
+     * @param cache The {@link TabLabelLayoutCache} used to lay the label out
+     *            in the background, or null to let the label lay itself out
+     */
+    void setLabelLayoutCache(TabLabelLayoutCache cache) {
+        mLabelLayoutCache = cache;
+        if (cache == null) {
+            // Let the TextView take over again
+            mLabel.setText(mLabel.getText());
+        } else if (mLabelWidth > 0) {
+            mLabel.setPreparedText(mLabel.getText(), cache, mLabelWidth);
+        }
+    }
+
+    /**
+     * Called by {@link CarouselContainer} when it computes the width of the
+     * tab, the labels set from then on are laid out in the background
+     * 
+     * @param width The width of the label
+     */
+    void setLabelWidth(int width) {
+        if (mLabelWidth == width) {
+            return;
+        }
+        mLabelWidth = width;
+        if (mLabelLayoutCache != null && mLabel.getText().length() > 0) {
+            mLabel.setPreparedText(mLabel.getText(), mLabelLayoutCache, width);
+        }
     }
 
     /**
@@ -115,7 +403,9 @@ public class CarouselTab extends FrameLayoutWithOverlay {
      * @param resId The resource identifier of the the drawable
      */
     public void setImageResource(int resId) {
+        clearImageRequest();
         mCarouselImage.setImageResource(resId);
+        updateImageMatrix();
     }
 
     /**
@@ -124,7 +414,14 @@ public class CarouselTab extends FrameLayoutWithOverlay {
      * @param bm The {@link Bitmap} to set
      */
     public void setImageBitmap(Bitmap bm) {
+        final Drawable current = mCarouselImage.getDrawable();
+        if (mImageLoader == null && current instanceof BitmapDrawable
+                && ((BitmapDrawable) current).getBitmap() == bm) {
+            return;
+        }
+        clearImageRequest();
         mCarouselImage.setImageBitmap(bm);
+        updateImageMatrix();
     }
 
     /**
@@ -133,7 +430,523 @@ public class CarouselTab extends FrameLayoutWithOverlay {
      * @param drawable The {@link Drawable} to set
      */
     public void setImageDrawable(Drawable drawable) {
+        if (mImageLoader == null && mCarouselImage.getDrawable() == drawable) {
+            return;
+        }
+        clearImageRequest();
         mCarouselImage.setImageDrawable(drawable);
+        updateImageMatrix();
+    }
+
+    /**
+     * Loads a drawable in the background, scaled to the size of the tab. The
+     * image is loaded once the tab has been measured.
+     * 
+     * @param loader The {@link TabImageLoader} to use
+     * @param resId The resource identifier of the the drawable
+     */
+    public void loadImageResource(TabImageLoader loader, int resId) {
+        if (mImageLoader == loader && mImageResId == resId) {
+            return;
+        }
+        detachLiveContent();
+        mImageLoader = loader;
+        mImageResId = resId;
+        mImageRequestTime = SystemClock.uptimeMillis();
+        loadImage();
+    }
+
+    /**
+     * Tints the colorstrip and the label scrim with the colors of the images
+     * loaded with {@link #loadImageResource(TabImageLoader, int)}. The colors
+     * are extracted in the background, so the image is first drawn with the
+     * default colors unless they're already cached.
+     * 
+     * @param extractor The {@link TabColorExtractor} to use, or null to keep
+     *            the default colors
+     */
+    public void setColorExtractor(TabColorExtractor extractor) {
+        if (mColorExtractor == extractor) {
+            return;
+        }
+        mColorExtractor = extractor;
+        resetColors();
+        if (mImageKey != null && mCrossfade != null && mCrossfade.getBitmap() != null) {
+            // The image is already shown
+            requestColors(mImageKey, mCrossfade.getBitmap());
+        }
+    }
+
+    /**
+     * @return The colors the tab is tinted with, or null
+     */
+    public TabColorExtractor.TabColors getImageColors() {
+        return mColors;
+    }
+
+    /**
+     * Called by {@link TabColorExtractor} when the colors of an image are
+     * known
+     * 
+     * @param key The key of the image
+     * @param colors The colors of the image
+     */
+    @SuppressWarnings("deprecation")
+    void onColorsExtracted(String key, TabColorExtractor.TabColors colors) {
+        if (!key.equals(mColorKey) || mColorExtractor == null) {
+            // Another image is shown by now
+            return;
+        }
+        if (mColors == null) {
+            mDefaultColorstripBackground = mColorstrip.getBackground();
+        }
+        mColors = colors;
+        mColorstrip.setBackgroundColor(colors.getVibrantColor());
+        updateScrim();
+    }
+
+    /**
+     * Asks {@code #mColorExtractor} for the colors of the image shown
+     */
+    private void requestColors(String key, Bitmap bm) {
+        if (mColorExtractor != null && !key.equals(mColorKey)) {
+            mColorKey = key;
+            mColorExtractor.extract(this, key, bm);
+        }
+    }
+
+    /**
+     * Restores the colors of the tab before it was tinted
+     */
+    @SuppressWarnings("deprecation")
+    private void resetColors() {
+        mColorKey = null;
+        if (mColors == null) {
+            return;
+        }
+        mColors = null;
+        mColorstrip.setBackgroundDrawable(mDefaultColorstripBackground);
+        mDefaultColorstripBackground = null;
+        updateScrim();
+    }
+
+    /**
+     * Draws a blurred copy of the image behind the label, under the scrim
+     * color. The strip is blurred once in the background and then drawn as a
+     * static bitmap, so it costs nothing extra while the carousel moves.
+     * 
+     * @param blurrer The {@link TabScrimBlurrer} to use, or null to draw the
+     *            plain scrim
+     */
+    public void setScrimBlurrer(TabScrimBlurrer blurrer) {
+        if (mScrimBlurrer == blurrer) {
+            return;
+        }
+        mScrimBlurrer = blurrer;
+        resetScrim();
+        if (mImageKey != null && mCrossfade != null && mCrossfade.getBitmap() != null) {
+            // The image is already shown
+            requestScrim(mImageKey, mCrossfade.getBitmap());
+        }
+    }
+
+    /**
+     * Called by {@link TabScrimBlurrer} when the label strip of an image has
+     * been blurred
+     * 
+     * @param key The key of the image
+     * @param strip The blurred strip
+     */
+    void onScrimBlurred(String key, Bitmap strip) {
+        if (!key.equals(mScrimKey) || mScrimBlurrer == null) {
+            // Another image is shown by now
+            return;
+        }
+        mFrostedScrim = strip;
+        updateScrim();
+    }
+
+    /**
+     * Asks {@code #mScrimBlurrer} for the blurred label strip of the image
+     * shown
+     */
+    private void requestScrim(String key, Bitmap bm) {
+        if (mScrimBlurrer != null && !key.equals(mScrimKey) && mImageWidth > 0) {
+            mScrimKey = key;
+            mScrimBlurrer.blur(this, key, bm, mImageWidth, getResources()
+                    .getDimensionPixelSize(R.dimen.carousel_label_height), mImageHeight);
+        }
+    }
+
+    /**
+     * Goes back to the plain scrim
+     */
+    private void resetScrim() {
+        mScrimKey = null;
+        if (mFrostedScrim != null) {
+            mFrostedScrim = null;
+            updateScrim();
+        }
+    }
+
+    /**
+     * Sets the background of {@code #mLabelScrim} from the extracted colors
+     * and the blurred strip
+     */
+    @SuppressWarnings("deprecation")
+    private void updateScrim() {
+        int color = getResources().getColor(R.color.transparent_black);
+        if (mColors != null) {
+            // Keep the translucency of the default scrim
+            color = Color.alpha(color) << 24 | mColors.getDominantColor() & 0xffffff;
+        }
+        if (mFrostedScrim == null) {
+            mLabelScrim.setBackgroundColor(color);
+            return;
+        }
+        mLabelScrim.setBackgroundDrawable(new LayerDrawable(new Drawable[] {
+                new BitmapDrawable(getResources(), mFrostedScrim), new ColorDrawable(color)
+        }));
+    }
+
+    /**
+     * Shows continuously updated content instead of an image, until another
+     * image is set. Each frame only invalidates the image, and the content is
+     * slowed down or paused by {@link CarouselContainer} while the tab can
+     * barely be seen.
+     * 
+     * @param content The {@link TabLiveContent} to show, or null to stop
+     *            showing it
+     */
+    public void setLiveContent(TabLiveContent content) {
+        if (mLiveContent == content) {
+            return;
+        }
+        clearImageRequest();
+        if (content == null) {
+            mCarouselImage.setImageDrawable(null);
+            return;
+        }
+        mLiveContent = content;
+        final Bitmap first = content.attach(this);
+        content.setRate(mLiveContentRate);
+        if (mCrossfade == null) {
+            mCrossfade = new CrossfadeDrawable();
+        }
+        mCrossfade.setBitmap(first);
+        // Let the ImageView recompute its matrix for the new size
+        mCrossfade.setIntrinsicSize(content.getWidth(), content.getHeight());
+        mCarouselImage.setImageDrawable(null);
+        mCarouselImage.setImageDrawable(mCrossfade);
+        updateImageMatrix();
+    }
+
+    /**
+     * @return The continuously updated content shown, or null
+     */
+    public TabLiveContent getLiveContent() {
+        return mLiveContent;
+    }
+
+    /**
+     * Called by {@link TabLiveContent} when a new frame is ready
+     * 
+     * @param frame The buffer holding the frame
+     */
+    void onLiveFrame(Bitmap frame) {
+        // Same size as the previous frame, only the drawable is invalidated
+        mCrossfade.setBitmap(frame);
+    }
+
+    /**
+     * Called by {@link CarouselContainer} when the visibility of the tab
+     * changes
+     * 
+     * @param rate The rate the live content is allowed to update at
+     */
+    void setLiveContentRate(int rate) {
+        mLiveContentRate = rate;
+        if (mLiveContent != null) {
+            mLiveContent.setRate(rate);
+        }
+    }
+
+    /**
+     * Stops showing the live content, if any
+     */
+    private void detachLiveContent() {
+        if (mLiveContent != null) {
+            mLiveContent.detach();
+            mLiveContent = null;
+        }
+    }
+
+    /**
+     * Called by {@link CarouselContainer} when it computes the size of the tab
+     * image and how far the header collapses
+     * 
+     * @param width The width of the tab image
+     * @param height The height of the tab image
+     * @param parallaxRange How far the image moves down when the carousel is
+     *            fully collapsed, or 0 to turn parallax off. The image is
+     *            decoded taller by this much, so it never has to be scaled.
+     */
+    void setImageSize(int width, int height, float parallaxRange) {
+        setParallaxRange(parallaxRange);
+        final int decodeHeight = height + (int) Math.ceil(mParallaxRange);
+        if (mImageWidth == width && mImageHeight == decodeHeight) {
+            return;
+        }
+        mImageWidth = width;
+        mImageHeight = decodeHeight;
+        loadImage();
+    }
+
+    /**
+     * Starts loading {@code #mImageResId} if the size of the tab is known
+     */
+    private void loadImage() {
+        if (mImageLoader != null && mImageResId != 0 && mImageWidth > 0 && mImageHeight > 0
+                && !mImageReleased) {
+            mImageLoader.load(this, mImageResId, mImageWidth, mImageHeight);
+        }
+    }
+
+    /**
+     * Releases the image loaded with
+     * {@link #loadImageResource(TabImageLoader, int)} to save memory. The
+     * decoded bitmap stays in the {@link TabImageLoader} cache for as long as
+     * it can and a low-quality preview is kept as a placeholder, scaled down
+     * from the image if none was decoded. Images that were set directly can't
+     * be restored and are kept.
+     */
+    public void releaseImage() {
+        releaseImage(false);
+    }
+
+    /**
+     * Like {@link #releaseImage()}
+     * 
+     * @param evict True to also drop the decoded bitmap from the
+     *            {@link TabImageLoader} cache, so its memory is freed
+     */
+    void releaseImage(boolean evict) {
+        if (mImageLoader == null || mImageReleased) {
+            return;
+        }
+        final String key = mImageKey;
+        cancelImageTask();
+        mImageKey = null;
+        mImageReleased = true;
+        if (mCrossfade != null) {
+            // Only scale the image down if it's shown, not its preview
+            final Bitmap shown = mShowingPreview ? null : mCrossfade.getBitmap();
+            mCrossfade.setBitmap(key != null ? mImageLoader.getPreview(key, shown) : null);
+            mShowingPreview = true;
+        }
+        if (evict && key != null) {
+            mImageLoader.evict(key);
+        }
+    }
+
+    /**
+     * Loads the image released by {@link #releaseImage()} again
+     */
+    public void restoreImage() {
+        if (!mImageReleased) {
+            return;
+        }
+        mImageReleased = false;
+        loadImage();
+    }
+
+    /**
+     * Clears the label and the image so the tab can show new content. The
+     * {@link CrossfadeDrawable} is kept to be reused by the next image.
+     */
+    void recycle() {
+        clearImageRequest();
+        if (mCrossfade != null) {
+            mCrossfade.setBitmap(null);
+        }
+        mCarouselImage.setImageDrawable(null);
+        setLabel(null);
+    }
+
+    /**
+     * @return True if the loaded image was released to save memory
+     */
+    public boolean isImageReleased() {
+        return mImageReleased;
+    }
+
+    /**
+     * @return The number of bytes used by the bitmaps this tab currently
+     *         draws
+     */
+    public int getImageByteCount() {
+        final Drawable drawable = mCarouselImage.getDrawable();
+        if (drawable == mCrossfade && mCrossfade != null) {
+            return mCrossfade.getByteCount();
+        } else if (drawable instanceof BitmapDrawable) {
+            final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            return bitmap != null ? Utils.getBitmapSize(bitmap) : 0;
+        }
+        return 0;
+    }
+
+    /**
+     * Forgets the pending image request, the image was set directly
+     */
+    private void clearImageRequest() {
+        detachLiveContent();
+        cancelImageTask();
+        mImageLoader = null;
+        mImageResId = 0;
+        mImageKey = null;
+        mShowingPreview = false;
+        mImageReleased = false;
+        mImageRequestTime = 0;
+        resetColors();
+        resetScrim();
+    }
+
+    /**
+     * Called by {@link TabImageLoader} when an image has been decoded
+     * 
+     * @param key The key of the decoded image
+     * @param bm The decoded {@link Bitmap}
+     */
+    void onImageLoaded(String key, Bitmap bm, boolean preview) {
+        if (!key.equals(mImageKey)) {
+            // A newer image was requested in the meantime
+            return;
+        }
+        if (mCrossfade == null) {
+            mCrossfade = new CrossfadeDrawable();
+        }
+        if (preview) {
+            mCrossfade.setBitmap(bm);
+        } else {
+            mImageTask = null;
+            if (mShowingPreview && mCarouselImage.getDrawable() == mCrossfade) {
+                mCrossfade.crossfadeTo(bm, getResources().getInteger(
+                        android.R.integer.config_shortAnimTime));
+            } else {
+                mCrossfade.setBitmap(bm);
+            }
+        }
+        mShowingPreview = preview;
+
+        if (mCarouselImage.getDrawable() != mCrossfade
+                || mCrossfade.getIntrinsicWidth() != mImageWidth
+                || mCrossfade.getIntrinsicHeight() != mImageHeight) {
+            // Let the ImageView recompute its matrix for the new size
+            mCrossfade.setIntrinsicSize(mImageWidth, mImageHeight);
+            mCarouselImage.setImageDrawable(null);
+            mCarouselImage.setImageDrawable(mCrossfade);
+            updateImageMatrix();
+        }
+        // A preview is plenty to extract the colors and blur the scrim from
+        requestColors(key, bm);
+        requestScrim(key, bm);
+
+        long elapsed = -1;
+        if (mImageRequestTime != 0) {
+            elapsed = SystemClock.uptimeMillis() - mImageRequestTime;
+            mImageRequestTime = 0;
+        }
+        if (mOnTabImageListener != null) {
+            mOnTabImageListener.onImageShown(this, elapsed, preview);
+        }
+    }
+
+    /**
+     * Called by {@link TabImageLoader} when the image couldn't be decoded. The
+     * tab keeps whatever it shows, but stops waiting for the image.
+     * 
+     * @param key The key of the image
+     */
+    void onImageFailed(String key) {
+        if (!key.equals(mImageKey)) {
+            // A newer image was requested in the meantime
+            return;
+        }
+        mImageTask = null;
+        mShowingPreview = false;
+        mImageRequestTime = 0;
+        if (mOnTabImageListener != null) {
+            mOnTabImageListener.onImageFailed(this);
+        }
+    }
+
+    /**
+     * Called by {@link TabImageLoader} when it had to decode the image this
+     * tab waits for
+     * 
+     * @param durationNanos The time spent decoding
+     * @param record False if the decode was already recorded in the metrics
+     *            through another tab
+     */
+    void onImageDecoded(long durationNanos, boolean record) {
+        if (mMetrics != null && record) {
+            mMetrics.record(CarouselMetrics.EVENT_IMAGE_DECODE, durationNanos);
+        }
+        if (mOnTabImageListener != null) {
+            mOnTabImageListener.onImageDecoded(this, durationNanos);
+        }
+    }
+
+    /**
+     * @param metrics Records image decodes, may be null
+     */
+    void setMetrics(CarouselMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * @return The metrics recording image decodes, or null
+     */
+    CarouselMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * @param listener Notified when images are decoded and shown
+     */
+    void setOnTabImageListener(OnTabImageListener listener) {
+        mOnTabImageListener = listener;
+    }
+
+    /**
+     * @return The key of the image shown or being loaded, or null
+     */
+    String getImageKey() {
+        return mImageKey;
+    }
+
+    /**
+     * @param key The key of the image shown or being loaded
+     */
+    void setImageKey(String key) {
+        mImageKey = key;
+    }
+
+    /**
+     * @param task The task loading the image
+     */
+    void setImageTask(TabImageLoader.DecodeTask task) {
+        mImageTask = task;
+    }
+
+    /**
+     * Stops waiting for the image being loaded, if any
+     */
+    void cancelImageTask() {
+        if (mImageTask != null) {
+            mImageTask.detach(this);
+            mImageTask = null;
+        }
     }
 
     public void setOnImageClickListner(OnClickListener onClickListener) {
@@ -168,4 +981,41 @@ public class CarouselTab extends FrameLayoutWithOverlay {
         return mColorstrip;
     }
 
+    /**
+     * @return True if an image loaded with
+     *         {@link #loadImageResource(TabImageLoader, int)} isn't shown in
+     *         full quality yet
+     */
+    boolean isImagePending() {
+        return mImageLoader != null && mImageResId != 0 && !mImageReleased
+                && (mImageKey == null || mImageTask != null || mShowingPreview);
+    }
+
+    /**
+     * Interface invoked when the images loaded into a tab are decoded and
+     * shown
+     */
+    interface OnTabImageListener {
+
+        /**
+         * @param tab The {@link CarouselTab} waiting for the image
+         * @param durationNanos The time spent decoding
+         */
+        public void onImageDecoded(CarouselTab tab, long durationNanos);
+
+        /**
+         * @param tab The {@link CarouselTab} showing the image
+         * @param elapsed Milliseconds since the image was requested, or -1 if
+         *            the tab already showed it or its preview
+         * @param preview True if a low-quality preview is shown
+         */
+        public void onImageShown(CarouselTab tab, long elapsed, boolean preview);
+
+        /**
+         * @param tab The {@link CarouselTab} that was waiting for an image
+         *            which couldn't be decoded
+         */
+        public void onImageFailed(CarouselTab tab);
+    }
+
 }
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * A fixed-size ring buffer of timestamped carousel events, kept so there is
+ * something to look at when a user reports that the header jumped or the tabs
+ * stuttered. Recording an event only writes to preallocated primitive arrays;
+ * once the buffer is full the oldest events are overwritten. Events are
+ * recorded and dumped on the UI thread.
+ * <p>
+ * The same hot paths are also marked with {@link Trace} sections, so they
+ * show up in systrace on Jelly Bean MR2 and up.
+ */
+public class CarouselTrace {
+
+    /**
+     * The user touched the carousel, value is the x coordinate
+     */
+    public static final int EVENT_TOUCH_DOWN = 1;
+
+    /**
+     * The user lifted their finger, value is the x coordinate
+     */
+    public static final int EVENT_TOUCH_UP = 2;
+
+    /**
+     * The carousel scrolled horizontally, value is the delta in pixels
+     */
+    public static final int EVENT_SCROLL = 3;
+
+    /**
+     * The pager was fake dragged, value is the amount in pixels
+     */
+    public static final int EVENT_FAKE_DRAG = 4;
+
+    /**
+     * The carousel was moved vertically, value is the target y coordinate
+     */
+    public static final int EVENT_MOVE_Y = 5;
+
+    /**
+     * A Y animation started, value is the duration
+     */
+    public static final int EVENT_ANIMATION_START = 6;
+
+    /**
+     * A Y animation ended or was cancelled, value is 1 if cancelled
+     */
+    public static final int EVENT_ANIMATION_END = 7;
+
+    /**
+     * A tab was selected, value is the position
+     */
+    public static final int EVENT_TAB_SELECTED = 8;
+
+    /**
+     * Names used by the text dump, indexed by event
+     */
+    private static final String[] EVENT_NAMES = {
+            "?", "down", "up", "scroll", "drag", "moveY", "animStart", "animEnd", "tab"
+    };
+
+    /**
+     * Written before the events by the binary dump
+     */
+    private static final int BINARY_MAGIC = 0x43545231;
+
+    /**
+     * Default number of events kept
+     */
+    public static final int DEFAULT_CAPACITY = 512;
+
+    private final long[] mTimes;
+
+    private final byte[] mEvents;
+
+    private final int[] mValues;
+
+    /**
+     * Index of the next event to write
+     */
+    private int mNext;
+
+    /**
+     * Number of events recorded, capped at the capacity
+     */
+    private int mSize;
+
+    /**
+     * Constructor of <code>CarouselTrace</code>
+     *
+     * @param capacity The number of events kept
+     */
+    public CarouselTrace(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        mTimes = new long[capacity];
+        mEvents = new byte[capacity];
+        mValues = new int[capacity];
+    }
+
+    /**
+     * Records an event
+     *
+     * @param event One of the {@code EVENT_*} constants
+     * @param value A value whose meaning depends on the event
+     */
+    public void record(int event, int value) {
+        mTimes[mNext] = SystemClock.uptimeMillis();
+        mEvents[mNext] = (byte) event;
+        mValues[mNext] = value;
+        mNext = (mNext + 1) % mTimes.length;
+        if (mSize < mTimes.length) {
+            mSize++;
+        }
+    }
+
+    /**
+     * Removes every recorded event
+     */
+    public void clear() {
+        mNext = 0;
+        mSize = 0;
+    }
+
+    /**
+     * @return The number of events currently held
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Writes the events, oldest first, one per line as
+     * {@code <uptime millis> <event> <value>}
+     *
+     * @param writer The {@link PrintWriter} to write to
+     */
+    public void dump(PrintWriter writer) {
+        final int start = (mNext - mSize + mTimes.length) % mTimes.length;
+        for (int i = 0; i < mSize; i++) {
+            final int index = (start + i) % mTimes.length;
+            writer.print(mTimes[index]);
+            writer.print(' ');
+            writer.print(EVENT_NAMES[mEvents[index]]);
+            writer.print(' ');
+            writer.println(mValues[index]);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the events, oldest first, in a compact binary format: a magic
+     * number and the event count as ints, then for every event its uptime
+     * millis as a long, its type as a byte and its value as an int
+     *
+     * @param out The {@link DataOutputStream} to write to
+     */
+    public void dump(DataOutputStream out) throws IOException {
+        final int start = (mNext - mSize + mTimes.length) % mTimes.length;
+        out.writeInt(BINARY_MAGIC);
+        out.writeInt(mSize);
+        for (int i = 0; i < mSize; i++) {
+            final int index = (start + i) % mTimes.length;
+            out.writeLong(mTimes[index]);
+            out.writeByte(mEvents[index]);
+            out.writeInt(mValues[index]);
+        }
+        out.flush();
+    }
+
+    /**
+     * Starts a systrace section on Jelly Bean MR2 and up
+     *
+     * @param name The name of the section
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public static void beginSection(String name) {
+        if (Utils.hasJellyBeanMR2()) {
+            Trace.beginSection(name);
+        }
+    }
+
+    /**
+     * Ends the systrace section started by {@link #beginSection(String)}
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public static void endSection() {
+        if (Utils.hasJellyBeanMR2()) {
+            Trace.endSection();
+        }
+    }
+}
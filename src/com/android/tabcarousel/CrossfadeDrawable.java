@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+
+/**
+ * A {@link Drawable} that draws a bitmap stretched to its bounds and can fade
+ * from one bitmap to another. Unlike a {@code TransitionDrawable}, the same
+ * instance is reused for every image shown in a tab, so swapping the
+ * low-quality preview for the final image allocates nothing.
+ */
+class CrossfadeDrawable extends Drawable {
+
+    /**
+     * Used to draw both bitmaps
+     */
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * The bitmap being faded out, or null
+     */
+    private Bitmap mFrom;
+
+    /**
+     * The bitmap being shown or faded in
+     */
+    private Bitmap mTo;
+
+    /**
+     * When the crossfade started, or -1 if there isn't one
+     */
+    private long mStartTime = -1;
+
+    /**
+     * The duration of the crossfade
+     */
+    private int mDuration;
+
+    /**
+     * The alpha set on this drawable
+     */
+    private int mAlpha = 255;
+
+    /**
+     * The size reported to the {@code ImageView}
+     */
+    private int mIntrinsicWidth, mIntrinsicHeight;
+
+    /**
+     * Sets the size reported to the {@code ImageView}, independent of the size
+     * of the bitmaps, so the preview and the final image are positioned the
+     * same way
+     */
+    void setIntrinsicSize(int width, int height) {
+        mIntrinsicWidth = width;
+        mIntrinsicHeight = height;
+    }
+
+    /**
+     * Shows the given bitmap immediately
+     */
+    void setBitmap(Bitmap bitmap) {
+        mFrom = null;
+        mTo = bitmap;
+        mStartTime = -1;
+        invalidateSelf();
+    }
+
+    /**
+     * Fades from the bitmap currently shown to the given one
+     */
+    void crossfadeTo(Bitmap bitmap, int duration) {
+        if (mTo == null || duration <= 0) {
+            setBitmap(bitmap);
+            return;
+        }
+        mFrom = mTo;
+        mTo = bitmap;
+        mDuration = duration;
+        mStartTime = SystemClock.uptimeMillis();
+        invalidateSelf();
+    }
+
+    /**
+     * @return The bitmap being shown or faded in
+     */
+    Bitmap getBitmap() {
+        return mTo;
+    }
+
+    /**
+     * @return The number of bytes used by the bitmaps being drawn
+     */
+    int getByteCount() {
+        return (mTo != null ? Utils.getBitmapSize(mTo) : 0)
+                + (mFrom != null ? Utils.getBitmapSize(mFrom) : 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void draw(Canvas canvas) {
+        if (mTo == null) {
+            return;
+        }
+        if (mFrom == null) {
+            mPaint.setAlpha(mAlpha);
+            canvas.drawBitmap(mTo, null, getBounds(), mPaint);
+            return;
+        }
+
+        final float progress = Utils.clamp((SystemClock.uptimeMillis() - mStartTime)
+                / (float) mDuration, 0.0f, 1.0f);
+        mPaint.setAlpha(mAlpha);
+        canvas.drawBitmap(mFrom, null, getBounds(), mPaint);
+        mPaint.setAlpha((int) (mAlpha * progress));
+        canvas.drawBitmap(mTo, null, getBounds(), mPaint);
+        if (progress < 1.0f) {
+            invalidateSelf();
+        } else {
+            mFrom = null;
+            mStartTime = -1;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getIntrinsicWidth() {
+        return mIntrinsicWidth > 0 ? mIntrinsicWidth : mTo != null ? mTo.getWidth() : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getIntrinsicHeight() {
+        return mIntrinsicHeight > 0 ? mIntrinsicHeight : mTo != null ? mTo.getHeight() : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAlpha(int alpha) {
+        mAlpha = alpha;
+        invalidateSelf();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        mPaint.setColorFilter(cf);
+        invalidateSelf();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
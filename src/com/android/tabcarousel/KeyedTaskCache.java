@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.os.AsyncTask;
+import android.support.v4.util.LruCache;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Values computed once per key on a background thread and kept in an
+ * {@link LruCache}. While a value is being computed, every other request for
+ * the same key waits for the same {@link Task} instead of starting another
+ * one, and the result is handed to each waiter that is still around. Waiters
+ * are only weakly referenced, so a view waiting for a value can still be
+ * collected.
+ * <p>
+ * The values only depend on their key, so the public classes built on this
+ * cache can be shared between every carousel of an app. Like them, it's used
+ * on the UI thread only.
+ *
+ * @param <W> The type of the waiters
+ * @param <V> The type of the values
+ */
+final class KeyedTaskCache<W, V> {
+
+    /**
+     * Computed values by key
+     */
+    private final LruCache<String, V> mCache;
+
+    /**
+     * Tasks that are currently computing a value, by key
+     */
+    private final HashMap<String, Task<W, V>> mPendingTasks = new HashMap<String, Task<W, V>>();
+
+    /**
+     * Constructor of <code>KeyedTaskCache</code>
+     *
+     * @param cache The {@link LruCache} keeping the values
+     */
+    KeyedTaskCache(LruCache<String, V> cache) {
+        mCache = cache;
+    }
+
+    /**
+     * @param key The key of a value
+     * @return The computed value, or null
+     */
+    V get(String key) {
+        return mCache.get(key);
+    }
+
+    /**
+     * Drops every computed value
+     */
+    void evictAll() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Makes a waiter wait for the task already computing a value
+     *
+     * @param key The key of the value
+     * @param waiter Receives the value once it's computed
+     * @return True if a task is computing the value, false if it must be
+     *         started with {@link #execute(Task, Object)}
+     */
+    boolean attach(String key, W waiter) {
+        final Task<W, V> task = mPendingTasks.get(key);
+        if (task == null) {
+            return false;
+        }
+        task.attach(waiter);
+        return true;
+    }
+
+    /**
+     * Computes a value in the background
+     *
+     * @param task The {@link Task} computing the value
+     * @param waiter Receives the value once it's computed
+     */
+    void execute(Task<W, V> task, W waiter) {
+        task.mOwner = this;
+        task.attach(waiter);
+        mPendingTasks.put(task.mKey, task);
+        Utils.execute(task);
+    }
+
+    /**
+     * Computes the value of a single key and hands it to every waiter
+     *
+     * @param <W> The type of the waiters
+     * @param <V> The type of the value
+     */
+    abstract static class Task<W, V> extends AsyncTask<Void, Void, V> {
+
+        private final ArrayList<WeakReference<W>> mWaiters = new ArrayList<WeakReference<W>>();
+
+        private final String mKey;
+
+        /**
+         * The cache the task was started by
+         */
+        private KeyedTaskCache<W, V> mOwner;
+
+        /**
+         * Constructor of <code>Task</code>
+         *
+         * @param key The key of the value
+         */
+        Task(String key) {
+            mKey = key;
+        }
+
+        /**
+         * @return The key of the value
+         */
+        final String getKey() {
+            return mKey;
+        }
+
+        /**
+         * Hands the computed value to a waiter
+         *
+         * @param waiter A waiter that is still referenced
+         * @param value The value, never null
+         */
+        protected abstract void deliver(W waiter, V value);
+
+        /**
+         * Adds a waiter
+         */
+        private void attach(W waiter) {
+            mWaiters.add(new WeakReference<W>(waiter));
+        }
+
+        /**
+         * Keeps the value, unless none could be computed, and hands it to the
+         * waiters
+         */
+        @Override
+        protected final void onPostExecute(V result) {
+            mOwner.mPendingTasks.remove(mKey);
+            if (result == null) {
+                return;
+            }
+            mOwner.mCache.put(mKey, result);
+            for (int i = 0; i < mWaiters.size(); i++) {
+                final W waiter = mWaiters.get(i).get();
+                if (waiter != null) {
+                    deliver(waiter, result);
+                }
+            }
+        }
+    }
+}
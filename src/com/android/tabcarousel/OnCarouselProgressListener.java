@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+/**
+ * Interface for callbacks invoked when the carousel scrolls between its tabs
+ * or collapses, with both positions already normalized.
+ */
+public interface OnCarouselProgressListener {
+
+    /**
+     * Called when the horizontal or vertical position of the carousel changes
+     *
+     * @param tabProgress 0 when the first tab is selected, 1 when the second
+     *            tab is, in between while scrolling
+     * @param collapseProgress 0 when the carousel is fully expanded, 1 when
+     *            only the labels are left on screen
+     */
+    public void onCarouselProgress(float tabProgress, float collapseProgress);
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+/**
+ * Interface for callbacks invoked when the user touches the carousel and a
+ * neighboring page is likely to be shown. This is the earliest point at which
+ * the page content and images can start being prepared.
+ */
+public interface OnPageWarmUpListener {
+
+    /**
+     * Called as soon as the user touches the carousel, before any movement
+     *
+     * @param position The position of the page that is likely to be shown
+     */
+    public void onWarmUpPage(int position);
+
+    /**
+     * Called when the drag didn't travel far enough to show the page passed
+     * to {@link #onWarmUpPage(int)}
+     *
+     * @param position The position of the page that was warmed up
+     */
+    public void onCancelWarmUp(int position);
+}
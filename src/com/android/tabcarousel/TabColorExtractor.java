@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.support.v4.util.LruCache;
+
+/**
+ * Extracts a dominant and a vibrant color from the images shown in the tabs,
+ * used to tint the colorstrip and the label scrim. The colors are computed on
+ * a background thread from a copy of the image only a few dozen pixels wide,
+ * and kept by image key in memory and, optionally, on disk, so an image is
+ * only ever scanned once.
+ */
+public class TabColorExtractor {
+
+    /**
+     * Name of the preferences the colors are persisted in
+     */
+    private static final String PREFERENCES_NAME = "com.android.tabcarousel.TabColorExtractor";
+
+    /**
+     * Number of colors kept in memory
+     */
+    private static final int MEMORY_CACHE_SIZE = 64;
+
+    /**
+     * Number of colors persisted before the preferences are cleared
+     */
+    private static final int MAX_PERSISTED_COLORS = 256;
+
+    /**
+     * The largest dimension of the copy of the image that is scanned
+     */
+    private static final int SAMPLE_SIZE = 32;
+
+    /**
+     * Bits kept for each channel when grouping similar pixels
+     */
+    private static final int QUANTIZE_BITS = 4;
+
+    /**
+     * Saturation below which a color isn't considered vibrant
+     */
+    private static final float MIN_VIBRANT_SATURATION = 0.35f;
+
+    /**
+     * Brightness range of a vibrant color
+     */
+    private static final float MIN_VIBRANT_VALUE = 0.3f, MAX_VIBRANT_VALUE = 0.95f;
+
+    /**
+     * Used to open the preferences
+     */
+    private final Context mContext;
+
+    /**
+     * Colors by image key, and the tasks extracting them
+     */
+    private final KeyedTaskCache<CarouselTab, TabColors> mMemoryCache;
+
+    /**
+     * True to persist the colors
+     */
+    private boolean mPersistent;
+
+    /**
+     * @param context The {@link Context} to use
+     */
+    public TabColorExtractor(Context context) {
+        mContext = context.getApplicationContext();
+        mMemoryCache = new KeyedTaskCache<CarouselTab, TabColors>(
+                new LruCache<String, TabColors>(MEMORY_CACHE_SIZE));
+    }
+
+    /**
+     * @param persistent True to keep the colors on disk across cold starts,
+     *            false to only cache them in memory
+     */
+    public void setPersistent(boolean persistent) {
+        mPersistent = persistent;
+    }
+
+    /**
+     * Drops the colors cached in memory
+     */
+    public void evictAll() {
+        mMemoryCache.evictAll();
+    }
+
+    /**
+     * Hands the colors of an image to a tab, immediately if they're cached in
+     * memory, once they're extracted in the background otherwise
+     *
+     * @param tab The {@link CarouselTab} showing the image
+     * @param key The key of the image
+     * @param bitmap The image, or a preview of it
+     */
+    void extract(CarouselTab tab, String key, Bitmap bitmap) {
+        final TabColors cached = mMemoryCache.get(key);
+        if (cached != null) {
+            tab.onColorsExtracted(key, cached);
+            return;
+        }
+        if (!mMemoryCache.attach(key, tab)) {
+            mMemoryCache.execute(new ExtractTask(this, key, bitmap, mPersistent), tab);
+        }
+    }
+
+    /**
+     * @return The persisted colors of an image, or null
+     */
+    private TabColors readPersisted(String key) {
+        final SharedPreferences preferences = mContext.getSharedPreferences(PREFERENCES_NAME,
+                Context.MODE_PRIVATE);
+        final String value = preferences.getString(key, null);
+        if (value == null) {
+            return null;
+        }
+        final int separator = value.indexOf(',');
+        try {
+            return new TabColors(Integer.parseInt(value.substring(0, separator)),
+                    Integer.parseInt(value.substring(separator + 1)));
+        } catch (final RuntimeException e) {
+            // Written by another version
+            return null;
+        }
+    }
+
+    /**
+     * Persists the colors of an image
+     */
+    private void writePersisted(String key, TabColors colors) {
+        final SharedPreferences preferences = mContext.getSharedPreferences(PREFERENCES_NAME,
+                Context.MODE_PRIVATE);
+        final SharedPreferences.Editor editor = preferences.edit();
+        if (preferences.getAll().size() >= MAX_PERSISTED_COLORS) {
+            // Cheaper than keeping track of the least recently used key
+            editor.clear();
+        }
+        editor.putString(key, colors.mDominantColor + "," + colors.mVibrantColor);
+        // Already in the background
+        editor.commit();
+    }
+
+    /**
+     * Scans a subsampled copy of an image
+     *
+     * @param bitmap The image to scan
+     * @return Its colors, or null if the image can't be read
+     */
+    static TabColors extractColors(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return null;
+        }
+        final int width = bitmap.getWidth(), height = bitmap.getHeight();
+        final int largest = Math.max(width, height);
+        final Bitmap sample;
+        if (largest > SAMPLE_SIZE) {
+            sample = Bitmap.createScaledBitmap(bitmap,
+                    Math.max(1, width * SAMPLE_SIZE / largest),
+                    Math.max(1, height * SAMPLE_SIZE / largest), false);
+        } else {
+            sample = bitmap;
+        }
+        final int sampleWidth = sample.getWidth(), sampleHeight = sample.getHeight();
+        final int[] pixels = new int[sampleWidth * sampleHeight];
+        sample.getPixels(pixels, 0, sampleWidth, 0, 0, sampleWidth, sampleHeight);
+        if (sample != bitmap) {
+            sample.recycle();
+        }
+
+        // Group similar pixels and keep their sum to average them later
+        final int shift = 8 - QUANTIZE_BITS;
+        final int buckets = 1 << (3 * QUANTIZE_BITS);
+        final int[] counts = new int[buckets];
+        final int[] sums = new int[buckets * 3];
+        for (final int pixel : pixels) {
+            if (Color.alpha(pixel) < 0x80) {
+                continue;
+            }
+            final int r = Color.red(pixel), g = Color.green(pixel), b = Color.blue(pixel);
+            final int bucket = (r >> shift) << (2 * QUANTIZE_BITS) | (g >> shift) << QUANTIZE_BITS
+                    | (b >> shift);
+            counts[bucket]++;
+            sums[bucket * 3] += r;
+            sums[bucket * 3 + 1] += g;
+            sums[bucket * 3 + 2] += b;
+        }
+
+        int dominant = -1, vibrant = -1;
+        float vibrantScore = 0;
+        final float[] hsv = new float[3];
+        for (int i = 0; i < buckets; i++) {
+            final int count = counts[i];
+            if (count == 0) {
+                continue;
+            }
+            if (dominant < 0 || count > counts[dominant]) {
+                dominant = i;
+            }
+            Color.colorToHSV(averageColor(sums, i, count), hsv);
+            if (hsv[1] < MIN_VIBRANT_SATURATION || hsv[2] < MIN_VIBRANT_VALUE
+                    || hsv[2] > MAX_VIBRANT_VALUE) {
+                continue;
+            }
+            // Favor saturated colors, but not a handful of stray pixels
+            final float score = count * hsv[1] * hsv[1];
+            if (score > vibrantScore) {
+                vibrantScore = score;
+                vibrant = i;
+            }
+        }
+        if (dominant < 0) {
+            return null;
+        }
+        final int dominantColor = averageColor(sums, dominant, counts[dominant]);
+        return new TabColors(dominantColor, vibrant >= 0 ? averageColor(sums, vibrant,
+                counts[vibrant]) : dominantColor);
+    }
+
+    /**
+     * @return The average color of the pixels grouped in a bucket
+     */
+    private static int averageColor(int[] sums, int bucket, int count) {
+        return Color.rgb(sums[bucket * 3] / count, sums[bucket * 3 + 1] / count,
+                sums[bucket * 3 + 2] / count);
+    }
+
+    /**
+     * The colors extracted from an image
+     */
+    public static final class TabColors {
+
+        private final int mDominantColor;
+
+        private final int mVibrantColor;
+
+        /**
+         * Constructor of <code>TabColors</code>
+         */
+        TabColors(int dominantColor, int vibrantColor) {
+            mDominantColor = dominantColor;
+            mVibrantColor = vibrantColor;
+        }
+
+        /**
+         * @return The opaque color covering most of the image
+         */
+        public int getDominantColor() {
+            return mDominantColor;
+        }
+
+        /**
+         * @return The most saturated color covering a good part of the image,
+         *         or the dominant color if there is none
+         */
+        public int getVibrantColor() {
+            return mVibrantColor;
+        }
+    }
+
+    /**
+     * Extracts the colors of a single image in the background
+     */
+    private static final class ExtractTask extends KeyedTaskCache.Task<CarouselTab, TabColors> {
+
+        private final TabColorExtractor mExtractor;
+
+        private final Bitmap mBitmap;
+
+        private final boolean mPersistent;
+
+        /**
+         * Constructor of <code>ExtractTask</code>
+         */
+        ExtractTask(TabColorExtractor extractor, String key, Bitmap bitmap, boolean persistent) {
+            super(key);
+            mExtractor = extractor;
+            mBitmap = bitmap;
+            mPersistent = persistent;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected TabColors doInBackground(Void... params) {
+            if (mPersistent) {
+                final TabColors persisted = mExtractor.readPersisted(getKey());
+                if (persisted != null) {
+                    return persisted;
+                }
+            }
+            final TabColors colors = extractColors(mBitmap);
+            if (colors != null && mPersistent) {
+                mExtractor.writePersisted(getKey(), colors);
+            }
+            return colors;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void deliver(CarouselTab tab, TabColors colors) {
+            tab.onColorsExtracted(getKey(), colors);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.annotation.TargetApi;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Helpers used to decode tab images at the size they are displayed
+ */
+public final class TabImageDecoder {
+
+    /* This class is never initiated */
+    private TabImageDecoder() {
+    }
+
+    /**
+     * Computes the largest power of two sample size that still decodes an
+     * image at least as large as the requested size
+     *
+     * @param width The width of the encoded image
+     * @param height The height of the encoded image
+     * @param reqWidth The requested width
+     * @param reqHeight The requested height
+     * @return The value to use for {@link BitmapFactory.Options#inSampleSize}
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= reqWidth && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Decodes a resource, subsampled as much as possible while still covering
+     * the requested size
+     *
+     * @param res The {@link Resources} to decode from
+     * @param resId The resource identifier of the image
+     * @param reqWidth The requested width
+     * @param reqHeight The requested height
+     * @param config The preferred {@link Bitmap.Config}
+     * @return The decoded image, or null if it could not be decoded
+     */
+    public static Bitmap decodeSampledResource(Resources res, int resId, int reqWidth,
+            int reqHeight, Bitmap.Config config) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = config;
+        // Decode the pixels as they are stored, the image is scaled to the
+        // tab size afterwards anyway
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(res, resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeResource(res, resId, options);
+    }
+
+    /**
+     * Scales and crops an image to exactly the requested size, the same way
+     * an {@code ImageView} using {@code centerCrop} would display it. The
+     * source image is recycled if a new one is created.
+     *
+     * @param source The image to crop
+     * @param width The requested width
+     * @param height The requested height
+     * @return An image of exactly the requested size
+     */
+    public static Bitmap centerCrop(Bitmap source, int width, int height) {
+        final int sourceWidth = source.getWidth(), sourceHeight = source.getHeight();
+        if (sourceWidth == width && sourceHeight == height) {
+            return source;
+        }
+        final float scale = Math.max((float) width / sourceWidth, (float) height / sourceHeight);
+        final Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postTranslate((width - sourceWidth * scale) * 0.5f,
+                (height - sourceHeight * scale) * 0.5f);
+
+        final Bitmap.Config config = source.getConfig() != null ? source.getConfig()
+                : Bitmap.Config.ARGB_8888;
+        final Bitmap cropped = Bitmap.createBitmap(width, height, config);
+        final Canvas canvas = new Canvas(cropped);
+        canvas.drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        source.recycle();
+        return cropped;
+    }
+
+    /**
+     * Computes the part of an image that {@code centerCrop} shows at the
+     * requested size
+     *
+     * @param width The width of the encoded image
+     * @param height The height of the encoded image
+     * @param reqWidth The requested width
+     * @param reqHeight The requested height
+     * @param outRegion Set to the visible part of the image
+     */
+    public static void getCenterCropRegion(int width, int height, int reqWidth, int reqHeight,
+            Rect outRegion) {
+        final float scale = Math.max((float) reqWidth / width, (float) reqHeight / height);
+        final int regionWidth = Math.min(width, Math.round(reqWidth / scale));
+        final int regionHeight = Math.min(height, Math.round(reqHeight / scale));
+        final int left = (width - regionWidth) / 2;
+        final int top = (height - regionHeight) / 2;
+        outRegion.set(left, top, left + regionWidth, top + regionHeight);
+    }
+
+    /**
+     * Decodes only the part of a resource that {@code centerCrop} shows at the
+     * requested size, so the pixels that would be cropped away are never
+     * allocated. If the image was previously decoded for another region at
+     * the same scale or larger, only the part of the new region that wasn't
+     * covered by the previous one is decoded.
+     *
+     * @param res The {@link Resources} to decode from
+     * @param resId The resource identifier of the image
+     * @param reqWidth The requested width
+     * @param reqHeight The requested height
+     * @param previous The image previously decoded from this resource, or null
+     * @param previousRegion The region {@code previous} was decoded from, or
+     *            null
+     * @param outRegion Set to the region the returned image was decoded from
+     * @param config The preferred {@link Bitmap.Config}
+     * @return An image of exactly the requested size, or null if it could not
+     *         be decoded
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+    public static Bitmap decodeCenterCropRegion(Resources res, int resId, int reqWidth,
+            int reqHeight, Bitmap previous, Rect previousRegion, Rect outRegion,
+            Bitmap.Config config) {
+        InputStream in = null;
+        final BitmapRegionDecoder decoder;
+        try {
+            in = res.openRawResource(resId);
+            // The decoder keeps its own copy of the encoded data
+            decoder = BitmapRegionDecoder.newInstance(in, false);
+        } catch (final IOException e) {
+            return null;
+        } finally {
+            Utils.closeQuietly(in);
+        }
+
+        try {
+            getCenterCropRegion(decoder.getWidth(), decoder.getHeight(), reqWidth, reqHeight,
+                    outRegion);
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = config;
+            options.inSampleSize = calculateInSampleSize(outRegion.width(), outRegion.height(),
+                    reqWidth, reqHeight);
+
+            // Pixels decoded at a smaller scale would be upscaled and blurry
+            final float scale = (float) reqWidth / outRegion.width();
+            if (previous == null || previous.isRecycled() || previousRegion == null
+                    || !Rect.intersects(previousRegion, outRegion)
+                    || (float) previous.getWidth() / previousRegion.width() < scale) {
+                final Bitmap region = decoder.decodeRegion(outRegion, options);
+                return region != null ? centerCrop(region, reqWidth, reqHeight) : null;
+            }
+
+            final Bitmap result = Bitmap.createBitmap(reqWidth, reqHeight,
+                    previous.getConfig() != null ? previous.getConfig() : config);
+            final Canvas canvas = new Canvas(result);
+            final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+            // Reuse the pixels that were already decoded
+            final Rect overlap = new Rect();
+            overlap.setIntersect(previousRegion, outRegion);
+            final float previousScale = (float) previous.getWidth() / previousRegion.width();
+            final Rect src = new Rect(Math.round((overlap.left - previousRegion.left)
+                    * previousScale), Math.round((overlap.top - previousRegion.top)
+                    * previousScale), Math.round((overlap.right - previousRegion.left)
+                    * previousScale), Math.round((overlap.bottom - previousRegion.top)
+                    * previousScale));
+            canvas.drawBitmap(previous, src, mapRegion(overlap, outRegion, scale), paint);
+
+            // Only decode the newly exposed strips around the overlap
+            drawRegion(decoder, canvas, paint, options, outRegion, scale, new Rect(
+                    outRegion.left, outRegion.top, outRegion.right, overlap.top));
+            drawRegion(decoder, canvas, paint, options, outRegion, scale, new Rect(
+                    outRegion.left, overlap.bottom, outRegion.right, outRegion.bottom));
+            drawRegion(decoder, canvas, paint, options, outRegion, scale, new Rect(
+                    outRegion.left, overlap.top, overlap.left, overlap.bottom));
+            drawRegion(decoder, canvas, paint, options, outRegion, scale, new Rect(
+                    overlap.right, overlap.top, outRegion.right, overlap.bottom));
+            return result;
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * Decodes part of a region and draws it where it belongs in the image of
+     * the whole region
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+    private static void drawRegion(BitmapRegionDecoder decoder, Canvas canvas, Paint paint,
+            BitmapFactory.Options options, Rect region, float scale, Rect strip) {
+        if (strip.isEmpty()) {
+            return;
+        }
+        final Bitmap bitmap = decoder.decodeRegion(strip, options);
+        if (bitmap != null) {
+            canvas.drawBitmap(bitmap, null, mapRegion(strip, region, scale), paint);
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Maps a rectangle in image coordinates to the coordinates of the image
+     * decoded for the given region
+     */
+    private static RectF mapRegion(Rect rect, Rect region, float scale) {
+        return new RectF((rect.left - region.left) * scale, (rect.top - region.top) * scale,
+                (rect.right - region.left) * scale, (rect.bottom - region.top) * scale);
+    }
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size bounded, least recently used cache of downsampled tab images kept in
+ * a directory on disk. Every change is appended to a journal before it is
+ * applied, so the cache can be rebuilt after the process dies at any point.
+ * <p>
+ * The journal looks like this:
+ *
+ * <pre>
+ *     com.android.tabcarousel.TabImageDiskCache
+ *     1
+ *
+ *     DIRTY 335c4c6028171cfddfbaae1a9c313c52
+ *     CLEAN 335c4c6028171cfddfbaae1a9c313c52 8342
+ *     READ 335c4c6028171cfddfbaae1a9c313c52
+ *     REMOVE 335c4c6028171cfddfbaae1a9c313c52
+ * </pre>
+ *
+ * A DIRTY line that isn't followed by a CLEAN or REMOVE line for the same key
+ * is a write that never finished. On open, every file without a CLEAN entry
+ * is deleted, so the size bound holds whenever the process died.
+ * <p>
+ * The directory is only touched from the calling thread, so this should never
+ * be used on the UI thread.
+ */
+public class TabImageDiskCache {
+
+    private static final String TAG = "TabImageDiskCache";
+
+    /**
+     * Name of the journal file
+     */
+    private static final String JOURNAL_FILE = "journal";
+
+    /**
+     * Name of the journal file while it's being rebuilt
+     */
+    private static final String JOURNAL_FILE_TMP = "journal.tmp";
+
+    /**
+     * Suffix of an image file that is being written
+     */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * First line of the journal
+     */
+    private static final String MAGIC = "com.android.tabcarousel.TabImageDiskCache";
+
+    /**
+     * Second line of the journal
+     */
+    private static final String VERSION = "1";
+
+    private static final String CLEAN = "CLEAN";
+
+    private static final String DIRTY = "DIRTY";
+
+    private static final String REMOVE = "REMOVE";
+
+    private static final String READ = "READ";
+
+    /**
+     * Number of journal lines that don't describe an entry before the journal
+     * is rebuilt
+     */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    /**
+     * Quality used to compress opaque images
+     */
+    private static final int COMPRESS_QUALITY = 90;
+
+    /**
+     * The directory holding the journal and images
+     */
+    private final File mDirectory;
+
+    /**
+     * The maximum number of bytes the images may use on disk
+     */
+    private final long mMaxSize;
+
+    /**
+     * Hashed keys mapped to the size of their file, in access order
+     */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(0,
+            0.75f, true);
+
+    /**
+     * The number of bytes currently used on disk
+     */
+    private long mSize;
+
+    /**
+     * Number of journal lines that don't describe an entry
+     */
+    private int mRedundantOpCount;
+
+    /**
+     * Appends to the journal, null until the cache is opened
+     */
+    private Writer mJournalWriter;
+
+    /**
+     * True if the directory could not be used
+     */
+    private boolean mFailed;
+
+    /**
+     * Creates the cache. The directory isn't read until the first time the
+     * cache is used.
+     *
+     * @param directory A directory used only by this cache
+     * @param maxSize The maximum number of bytes to store
+     */
+    public TabImageDiskCache(File directory, long maxSize) {
+        if (directory == null || maxSize <= 0) {
+            throw new IllegalArgumentException("A directory and a positive size are required");
+        }
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Decodes the image stored for the given key. The image is read straight
+     * from the file descriptor, without being copied into a heap buffer first.
+     *
+     * @param key The key of the image
+     * @param options The options to decode with, may be null
+     * @return The decoded image, or null if there isn't one
+     */
+    public Bitmap get(String key, BitmapFactory.Options options) {
+        final String name = hashKey(key);
+        FileInputStream in = null;
+        synchronized (this) {
+            if (!ensureOpen() || mEntries.get(name) == null) {
+                return null;
+            }
+            try {
+                in = new FileInputStream(getFile(name));
+                appendJournal(READ, name, null);
+            } catch (final IOException e) {
+                Utils.closeQuietly(in);
+                removeEntry(name);
+                return null;
+            }
+        }
+        // Decoding happens outside of the lock. If the entry is evicted in
+        // the meantime, the open descriptor still points to the data.
+        try {
+            return BitmapFactory.decodeFileDescriptor(in.getFD(), null, options);
+        } catch (final IOException e) {
+            return null;
+        } finally {
+            Utils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores an image for the given key, replacing any previous one
+     *
+     * @param key The key of the image
+     * @param bitmap The image to store, already scaled to the size it's shown
+     * @return True if the image was stored, false otherwise
+     */
+    public synchronized boolean put(String key, Bitmap bitmap) {
+        if (!ensureOpen()) {
+            return false;
+        }
+        final String name = hashKey(key);
+        final File dirty = new File(mDirectory, name + TMP_SUFFIX);
+        final File clean = getFile(name);
+        OutputStream out = null;
+        try {
+            appendJournal(DIRTY, name, null);
+            out = new FileOutputStream(dirty);
+            final CompressFormat format = bitmap.hasAlpha() ? CompressFormat.PNG
+                    : CompressFormat.JPEG;
+            if (!bitmap.compress(format, COMPRESS_QUALITY, out)) {
+                throw new IOException("Unable to compress " + key);
+            }
+            out.close();
+            out = null;
+            if (!dirty.renameTo(clean)) {
+                throw new IOException("Unable to rename " + dirty);
+            }
+        } catch (final IOException e) {
+            Log.w(TAG, "Failed to store " + key, e);
+            Utils.closeQuietly(out);
+            dirty.delete();
+            removeEntry(name);
+            return false;
+        }
+
+        final Long previous = mEntries.put(name, clean.length());
+        if (previous != null) {
+            mSize -= previous;
+        }
+        mSize += clean.length();
+        try {
+            appendJournal(CLEAN, name, String.valueOf(clean.length()));
+        } catch (final IOException e) {
+            Log.w(TAG, "Failed to write the journal", e);
+        }
+        trimToSize();
+        return true;
+    }
+
+    /**
+     * Removes the image stored for the given key
+     *
+     * @param key The key of the image
+     */
+    public synchronized void remove(String key) {
+        if (ensureOpen()) {
+            removeEntry(hashKey(key));
+        }
+    }
+
+    /**
+     * @return The number of bytes currently used on disk
+     */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    /**
+     * @return The maximum number of bytes to store
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Closes the journal. The cache is reopened the next time it's used.
+     */
+    public synchronized void close() {
+        Utils.closeQuietly(mJournalWriter);
+        mJournalWriter = null;
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    /**
+     * Reads the journal the first time the cache is used
+     *
+     * @return True if the cache can be used, false otherwise
+     */
+    private boolean ensureOpen() {
+        if (mJournalWriter != null) {
+            return true;
+        }
+        if (mFailed) {
+            return false;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + mDirectory);
+            mFailed = true;
+            return false;
+        }
+        try {
+            readJournal();
+            mJournalWriter = new BufferedWriter(new FileWriter(
+                    new File(mDirectory, JOURNAL_FILE), true));
+        } catch (final IOException e) {
+            // Missing or corrupt journal, start over
+            try {
+                deleteContents();
+                rebuildJournal();
+            } catch (final IOException rebuildError) {
+                Log.w(TAG, "Unable to open " + mDirectory, rebuildError);
+                mFailed = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replays the journal into {@link #mEntries} and deletes anything that
+     * isn't described by it
+     */
+    private void readJournal() throws IOException {
+        final BufferedReader reader = new BufferedReader(new FileReader(new File(mDirectory,
+                JOURNAL_FILE)));
+        int lineCount = 0;
+        try {
+            if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine())
+                    || !"".equals(reader.readLine())) {
+                throw new IOException("Unexpected journal header");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split(" ");
+                if (parts.length < 2) {
+                    throw new IOException("Unexpected journal line: " + line);
+                }
+                final String op = parts[0], name = parts[1];
+                if (CLEAN.equals(op) && parts.length == 3) {
+                    mEntries.put(name, Long.parseLong(parts[2]));
+                } else if (REMOVE.equals(op)) {
+                    mEntries.remove(name);
+                } else if (READ.equals(op)) {
+                    mEntries.get(name);
+                } else if (!DIRTY.equals(op)) {
+                    throw new IOException("Unexpected journal line: " + line);
+                }
+                lineCount++;
+            }
+        } catch (final NumberFormatException e) {
+            throw new IOException("Unexpected journal size");
+        } finally {
+            Utils.closeQuietly(reader);
+        }
+
+        // Unfinished writes and images renamed just before a crash kept their
+        // CLEAN line from being written are never counted or evicted, so
+        // discard every file without an entry
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                final String fileName = file.getName();
+                if (!JOURNAL_FILE.equals(fileName) && !mEntries.containsKey(fileName)) {
+                    file.delete();
+                }
+            }
+        }
+
+        mSize = 0;
+        final Iterator<Map.Entry<String, Long>> i = mEntries.entrySet().iterator();
+        while (i.hasNext()) {
+            final Map.Entry<String, Long> entry = i.next();
+            final File file = getFile(entry.getKey());
+            if (file.isFile()) {
+                // The image may have been replaced without its new size
+                // reaching the journal
+                entry.setValue(file.length());
+                mSize += file.length();
+            } else {
+                i.remove();
+            }
+        }
+        mRedundantOpCount = lineCount - mEntries.size();
+    }
+
+    /**
+     * Writes a new journal containing only the current entries and replaces
+     * the old one
+     */
+    private void rebuildJournal() throws IOException {
+        Utils.closeQuietly(mJournalWriter);
+        final File journal = new File(mDirectory, JOURNAL_FILE);
+        final File journalTmp = new File(mDirectory, JOURNAL_FILE_TMP);
+        final Writer writer = new BufferedWriter(new FileWriter(journalTmp));
+        try {
+            writer.write(MAGIC + "\n" + VERSION + "\n\n");
+            for (final Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(CLEAN + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        if (!journalTmp.renameTo(journal)) {
+            throw new IOException("Unable to rename " + journalTmp);
+        }
+        mJournalWriter = new BufferedWriter(new FileWriter(journal, true));
+        mRedundantOpCount = 0;
+    }
+
+    /**
+     * Appends a line to the journal and flushes it so it survives a crash
+     */
+    private void appendJournal(String op, String name, String size) throws IOException {
+        mJournalWriter.write(size == null ? op + " " + name + "\n" : op + " " + name + " "
+                + size + "\n");
+        mJournalWriter.flush();
+        if (!DIRTY.equals(op) && !CLEAN.equals(op)) {
+            mRedundantOpCount++;
+        }
+        if (mRedundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD
+                && mRedundantOpCount >= mEntries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    /**
+     * Deletes an entry and its file
+     */
+    private void removeEntry(String name) {
+        final Long size = mEntries.remove(name);
+        if (size == null) {
+            return;
+        }
+        mSize -= size;
+        getFile(name).delete();
+        try {
+            appendJournal(REMOVE, name, null);
+        } catch (final IOException e) {
+            Log.w(TAG, "Failed to write the journal", e);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits
+     */
+    private void trimToSize() {
+        while (mSize > mMaxSize && !mEntries.isEmpty()) {
+            removeEntry(mEntries.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Deletes every file in {@link #mDirectory}
+     */
+    private void deleteContents() {
+        mEntries.clear();
+        mSize = 0;
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return The file holding the entry with the given hashed key
+     */
+    private File getFile(String name) {
+        return new File(mDirectory, name);
+    }
+
+    /**
+     * @return A file-system safe version of the given key
+     */
+    private static String hashKey(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes());
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                builder.append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            return String.valueOf(key.hashCode());
+        }
+    }
+}
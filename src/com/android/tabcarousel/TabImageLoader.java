@@ -0,0 +1,573 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.os.AsyncTask;
+import android.support.v4.util.LruCache;
+import android.util.SparseArray;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Loads the images shown in a {@link CarouselTab} off the UI thread, already
+ * scaled to the size of the tab. Decoded images are kept in memory and,
+ * optionally, in a {@link TabImageDiskCache} so the next cold start decodes a
+ * small tab-sized file instead of the original artwork.
+ * <p>
+ * In progressive mode, a heavily subsampled preview is decoded first so the
+ * tab has content as soon as possible, then the full-quality image is faded
+ * in once it's ready.
+ */
+public class TabImageLoader {
+
+    /**
+     * Fraction of the memory class used by the memory cache
+     */
+    private static final int MEMORY_CACHE_DIVIDER = 8;
+
+    /**
+     * How much smaller than the tab the preview image is
+     */
+    private static final int PREVIEW_SCALE = 8;
+
+    /**
+     * Appended to the key of an image to get the key of its preview
+     */
+    private static final String PREVIEW_SUFFIX = "#preview";
+
+    /**
+     * Used to decode the images
+     */
+    private final Resources mResources;
+
+    /**
+     * The version code of the app, part of every key so images persisted by
+     * another version are never reused
+     */
+    private final int mVersionCode;
+
+    /**
+     * Resource names by identifier, identifiers change between builds but the
+     * names don't
+     */
+    private final SparseArray<String> mResourceNames = new SparseArray<String>();
+
+    /**
+     * Tab-sized images by key
+     */
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    /**
+     * Tab-sized images that survive the process, may be null
+     */
+    private TabImageDiskCache mDiskCache;
+
+    /**
+     * True to decode a preview before the full-quality image
+     */
+    private boolean mProgressive;
+
+    /**
+     * True to only decode the part of the image shown in the tab
+     */
+    private boolean mRegionDecoding;
+
+    /**
+     * The last region decoded for each resource, used to only decode the newly
+     * exposed part when the tab size changes
+     */
+    private final SparseArray<DecodedRegion> mDecodedRegions = new SparseArray<DecodedRegion>();
+
+    /**
+     * The configuration used to decode opaque images
+     */
+    private Bitmap.Config mOpaqueConfig = Bitmap.Config.ARGB_8888;
+
+    /**
+     * The largest dimension images are decoded at, or 0 for no limit
+     */
+    private int mMaxDecodeSize;
+
+    /**
+     * Tasks that are currently decoding, by key. Only used on the UI thread.
+     */
+    private final HashMap<String, DecodeTask> mPendingTasks = new HashMap<String, DecodeTask>();
+
+    /**
+     * @param context The {@link Context} to use
+     */
+    public TabImageLoader(Context context) {
+        mResources = context.getResources();
+        int versionCode = 0;
+        try {
+            versionCode = context.getPackageManager().getPackageInfo(context.getPackageName(),
+                    0).versionCode;
+        } catch (final PackageManager.NameNotFoundException e) {
+            // Can't happen for the calling app
+        }
+        mVersionCode = versionCode;
+        final int memoryClass = ((ActivityManager) context
+                .getSystemService(Context.ACTIVITY_SERVICE)).getMemoryClass();
+        mMemoryCache = new LruCache<String, Bitmap>(1024 * 1024 * memoryClass
+                / MEMORY_CACHE_DIVIDER) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return Utils.getBitmapSize(value);
+            }
+        };
+    }
+
+    /**
+     * @param diskCache The {@link TabImageDiskCache} used to persist the
+     *            downsampled images, or null to only cache them in memory
+     */
+    public void setDiskCache(TabImageDiskCache diskCache) {
+        mDiskCache = diskCache;
+    }
+
+    /**
+     * @param progressive True to show a low-quality preview while the
+     *            full-quality image is being decoded
+     */
+    public void setProgressive(boolean progressive) {
+        mProgressive = progressive;
+    }
+
+    /**
+     * @param regionDecoding True to only decode the part of the image that is
+     *            visible in the tab. Ignored before Gingerbread MR1.
+     */
+    public void setRegionDecoding(boolean regionDecoding) {
+        mRegionDecoding = regionDecoding;
+    }
+
+    /**
+     * Applies the image related settings of a
+     * {@link CarouselPerformanceProfile}
+     *
+     * @param profile The {@link CarouselPerformanceProfile} to use
+     */
+    public void setPerformanceProfile(CarouselPerformanceProfile profile) {
+        mOpaqueConfig = profile.isOpaqueImagesRgb565() ? Bitmap.Config.RGB_565
+                : Bitmap.Config.ARGB_8888;
+        mMaxDecodeSize = profile.getMaxDecodeSize();
+    }
+
+    /**
+     * Releases cached images according to how much memory the system needs
+     * back. Images that are released can be decoded again from the disk cache.
+     *
+     * @param level The level passed to
+     *            {@link ComponentCallbacks2#onTrimMemory(int)}
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            mMemoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mMemoryCache.trimToSize(mMemoryCache.size() / 2);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            // Still in the foreground, but the system is running low
+            mMemoryCache.trimToSize(mMemoryCache.size() / 2);
+        }
+    }
+
+    /**
+     * Drops an image from the memory cache, keeping its preview
+     *
+     * @param key The key of the image
+     */
+    void evict(String key) {
+        mMemoryCache.remove(key);
+    }
+
+    /**
+     * Returns the preview of an image, even if none was decoded because
+     * progressive mode is off
+     *
+     * @param key The key of the image the tab shows or loads
+     * @param image The full-quality image the tab shows, or null
+     * @return The cached preview, else one scaled down from the image, or null
+     */
+    Bitmap getPreview(String key, Bitmap image) {
+        final String previewKey = key + PREVIEW_SUFFIX;
+        Bitmap preview = mMemoryCache.get(previewKey);
+        if (preview == null && image != null && !image.isRecycled()) {
+            preview = Bitmap.createScaledBitmap(image,
+                    Math.max(1, image.getWidth() / PREVIEW_SCALE),
+                    Math.max(1, image.getHeight() / PREVIEW_SCALE), true);
+            mMemoryCache.put(previewKey, preview);
+        }
+        return preview;
+    }
+
+    /**
+     * Loads an image resource into the given tab, scaled to the given size
+     *
+     * @param tab The {@link CarouselTab} to load into
+     * @param resId The resource identifier of the image
+     * @param width The width of the tab image
+     * @param height The height of the tab image
+     */
+    void load(CarouselTab tab, int resId, int width, int height) {
+        final int largest = Math.max(width, height);
+        if (mMaxDecodeSize > 0 && largest > mMaxDecodeSize) {
+            // The tab scales the smaller image up
+            width = Math.max(1, width * mMaxDecodeSize / largest);
+            height = Math.max(1, height * mMaxDecodeSize / largest);
+        }
+        final String key = getKey(resId, width, height, mOpaqueConfig);
+        if (key.equals(tab.getImageKey())) {
+            // Already shown or being loaded
+            return;
+        }
+        tab.cancelImageTask();
+        tab.setImageKey(key);
+
+        final Bitmap cached = mMemoryCache.get(key);
+        if (cached != null) {
+            tab.onImageLoaded(key, cached, false);
+            return;
+        }
+        if (mProgressive) {
+            final Bitmap preview = mMemoryCache.get(key + PREVIEW_SUFFIX);
+            if (preview != null) {
+                tab.onImageLoaded(key, preview, true);
+            }
+        }
+
+        // Another tab may already be waiting for the same image
+        DecodeTask task = mPendingTasks.get(key);
+        if (task == null) {
+            task = new DecodeTask(this, key, resId, width, height, mOpaqueConfig, mProgressive);
+            mPendingTasks.put(key, task);
+            Utils.execute(task);
+        }
+        task.attach(tab);
+        tab.setImageTask(task);
+    }
+
+    /**
+     * @return The key of a resource decoded at the given size. It's persisted
+     *         by the disk cache and {@link TabColorExtractor}, so it's built
+     *         from the resource name and the app version rather than the
+     *         identifier, which another build may give to another image.
+     */
+    private String getKey(int resId, int width, int height, Bitmap.Config config) {
+        String name = mResourceNames.get(resId);
+        if (name == null) {
+            try {
+                name = mResources.getResourceName(resId);
+            } catch (final Resources.NotFoundException e) {
+                // Fails to decode anyway
+                name = String.valueOf(resId);
+            }
+            mResourceNames.put(resId, name);
+        }
+        return "res:" + name + ":" + mVersionCode + "@" + width + "x" + height + "/" + config;
+    }
+
+    /**
+     * Decodes a tab-sized image from the disk cache if possible
+     */
+    private Bitmap decodeCached(String key, Bitmap.Config config) {
+        final TabImageDiskCache diskCache = mDiskCache;
+        if (diskCache == null) {
+            return null;
+        }
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = config;
+        final Bitmap bitmap = diskCache.get(key, options);
+        if (bitmap != null) {
+            mMemoryCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes a heavily subsampled preview of a resource, unless one is
+     * already in memory
+     */
+    private Bitmap decodePreview(String key, int resId, int width, int height,
+            Bitmap.Config config) {
+        final String previewKey = key + PREVIEW_SUFFIX;
+        if (mMemoryCache.get(previewKey) != null) {
+            // Already shown by load()
+            return null;
+        }
+        final int previewWidth = Math.max(1, width / PREVIEW_SCALE);
+        final int previewHeight = Math.max(1, height / PREVIEW_SCALE);
+        final Bitmap preview;
+        if (mRegionDecoding && Utils.hasGingerbreadMR1()) {
+            preview = TabImageDecoder.decodeCenterCropRegion(mResources, resId, previewWidth,
+                    previewHeight, null, null, new Rect(), config);
+        } else {
+            final Bitmap bitmap = TabImageDecoder.decodeSampledResource(mResources, resId,
+                    previewWidth, previewHeight, config);
+            preview = bitmap != null ? TabImageDecoder.centerCrop(bitmap, previewWidth,
+                    previewHeight) : null;
+        }
+        if (preview == null) {
+            return null;
+        }
+        mMemoryCache.put(previewKey, preview);
+        return preview;
+    }
+
+    /**
+     * Decodes a tab-sized image from the original resource and stores it in
+     * the caches
+     */
+    private Bitmap decodeFull(String key, int resId, int width, int height,
+            Bitmap.Config config) {
+        Bitmap bitmap;
+        if (mRegionDecoding && Utils.hasGingerbreadMR1()) {
+            bitmap = decodeRegion(key, resId, width, height, config);
+        } else {
+            bitmap = TabImageDecoder.decodeSampledResource(mResources, resId, width, height,
+                    config);
+            if (bitmap != null) {
+                bitmap = TabImageDecoder.centerCrop(bitmap, width, height);
+            }
+        }
+        if (bitmap == null) {
+            return null;
+        }
+        final TabImageDiskCache diskCache = mDiskCache;
+        if (diskCache != null) {
+            diskCache.put(key, bitmap);
+        }
+        mMemoryCache.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Decodes the visible region of a resource, reusing the pixels of the
+     * previously decoded region when it's still in memory
+     */
+    private Bitmap decodeRegion(String key, int resId, int width, int height,
+            Bitmap.Config config) {
+        final DecodedRegion previous;
+        synchronized (mDecodedRegions) {
+            previous = mDecodedRegions.get(resId);
+        }
+        final Bitmap previousBitmap = previous != null ? mMemoryCache.get(previous.mKey) : null;
+        final Rect region = new Rect();
+        final Bitmap bitmap = TabImageDecoder.decodeCenterCropRegion(mResources, resId, width,
+                height, previousBitmap, previous != null ? previous.mRegion : null, region,
+                config);
+        if (bitmap != null) {
+            synchronized (mDecodedRegions) {
+                mDecodedRegions.put(resId, new DecodedRegion(key, region));
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * The region of a resource held by the image stored under a key
+     */
+    private static final class DecodedRegion {
+
+        private final String mKey;
+
+        private final Rect mRegion;
+
+        /**
+         * Constructor of <code>DecodedRegion</code>
+         */
+        DecodedRegion(String key, Rect region) {
+            mKey = key;
+            mRegion = region;
+        }
+    }
+
+    /**
+     * Decodes a single tab image in the background and delivers it to every
+     * tab waiting for it
+     */
+    static final class DecodeTask extends AsyncTask<Void, Bitmap, Bitmap> {
+
+        private final TabImageLoader mLoader;
+
+        private final ArrayList<WeakReference<CarouselTab>> mTabs = new ArrayList<WeakReference<CarouselTab>>();
+
+        private final String mKey;
+
+        private final int mResId;
+
+        private final int mWidth;
+
+        private final int mHeight;
+
+        private final Bitmap.Config mConfig;
+
+        private final boolean mProgressive;
+
+        /**
+         * Time spent decoding, set in the background
+         */
+        private long mDecodeNanos;
+
+        /**
+         * Constructor of <code>DecodeTask</code>
+         */
+        DecodeTask(TabImageLoader loader, String key, int resId, int width, int height,
+                Bitmap.Config config, boolean progressive) {
+            mLoader = loader;
+            mKey = key;
+            mResId = resId;
+            mWidth = width;
+            mHeight = height;
+            mConfig = config;
+            mProgressive = progressive;
+        }
+
+        /**
+         * Adds a tab waiting for the image
+         */
+        void attach(CarouselTab tab) {
+            mTabs.add(new WeakReference<CarouselTab>(tab));
+        }
+
+        /**
+         * Removes a tab that no longer wants the image. The task is cancelled
+         * once nobody is waiting for it.
+         */
+        void detach(CarouselTab tab) {
+            for (int i = mTabs.size() - 1; i >= 0; i--) {
+                final CarouselTab waiting = mTabs.get(i).get();
+                if (waiting == null || waiting == tab) {
+                    mTabs.remove(i);
+                }
+            }
+            if (mTabs.isEmpty()) {
+                cancel(false);
+                if (mLoader.mPendingTasks.get(mKey) == this) {
+                    mLoader.mPendingTasks.remove(mKey);
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Bitmap doInBackground(Void... params) {
+            if (isCancelled()) {
+                return null;
+            }
+            final long start = System.nanoTime();
+            final Bitmap cached = mLoader.decodeCached(mKey, mConfig);
+            if (cached != null) {
+                // Tab-sized images decode quickly, no need for a preview
+                mDecodeNanos = System.nanoTime() - start;
+                return cached;
+            }
+            if (mProgressive) {
+                final Bitmap preview = mLoader.decodePreview(mKey, mResId, mWidth, mHeight,
+                        mConfig);
+                if (preview != null) {
+                    publishProgress(preview);
+                }
+            }
+            if (isCancelled()) {
+                return null;
+            }
+            final Bitmap bitmap = mLoader.decodeFull(mKey, mResId, mWidth, mHeight, mConfig);
+            mDecodeNanos = System.nanoTime() - start;
+            return bitmap;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void onProgressUpdate(Bitmap... values) {
+            deliver(values[0], true);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void onPostExecute(Bitmap result) {
+            if (mLoader.mPendingTasks.get(mKey) == this) {
+                mLoader.mPendingTasks.remove(mKey);
+            }
+            if (result != null) {
+                for (int i = 0; i < mTabs.size(); i++) {
+                    final CarouselTab tab = mTabs.get(i).get();
+                    if (tab != null) {
+                        // The tabs of a carousel share its metrics, which
+                        // count the decode once
+                        tab.onImageDecoded(mDecodeNanos, !isRecordedBefore(i, tab.getMetrics()));
+                    }
+                }
+                deliver(result, false);
+            } else {
+                for (int i = 0; i < mTabs.size(); i++) {
+                    final CarouselTab tab = mTabs.get(i).get();
+                    if (tab != null) {
+                        tab.onImageFailed(mKey);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @param index The index of a waiting tab
+         * @param metrics The metrics of that tab
+         * @return True if a tab before it records into the same metrics
+         */
+        private boolean isRecordedBefore(int index, CarouselMetrics metrics) {
+            for (int i = 0; i < index; i++) {
+                final CarouselTab tab = mTabs.get(i).get();
+                if (tab != null && tab.getMetrics() == metrics) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Hands the decoded image to the tabs still waiting for it
+         */
+        private void deliver(Bitmap bitmap, boolean preview) {
+            for (int i = 0; i < mTabs.size(); i++) {
+                final CarouselTab tab = mTabs.get(i).get();
+                if (tab != null) {
+                    tab.onImageLoaded(mKey, bitmap, preview);
+                }
+            }
+        }
+    }
+}
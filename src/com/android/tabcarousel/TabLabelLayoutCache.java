@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.support.v4.util.LruCache;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+/**
+ * Measures, shapes and ellipsizes the tab labels off the UI thread and keeps
+ * the resulting {@link Layout}s, so a {@link TabLabelView} only has to draw
+ * them. Layouts are cached by text, width and text style, so tabs showing the
+ * same label at the same size measure it once.
+ */
+public class TabLabelLayoutCache {
+
+    /**
+     * Number of layouts kept by default
+     */
+    private static final int DEFAULT_MAX_SIZE = 64;
+
+    /**
+     * Prepared layouts by key, and the tasks preparing them
+     */
+    private final KeyedTaskCache<TabLabelView, Layout> mCache;
+
+    /**
+     * Constructor of <code>TabLabelLayoutCache</code>
+     */
+    public TabLabelLayoutCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor of <code>TabLabelLayoutCache</code>
+     *
+     * @param maxSize The number of layouts kept
+     */
+    public TabLabelLayoutCache(int maxSize) {
+        mCache = new KeyedTaskCache<TabLabelView, Layout>(new LruCache<String, Layout>(maxSize));
+    }
+
+    /**
+     * Drops every prepared layout
+     */
+    public void evictAll() {
+        mCache.evictAll();
+    }
+
+    /**
+     * @param text The label
+     * @param width The width available to the text
+     * @param paint The {@link TextPaint} of the label
+     * @return The key of the layout
+     */
+    static String getKey(CharSequence text, int width, TextPaint paint) {
+        return text + "@" + width + "/" + paint.getTextSize() + "/" + paint.getTextScaleX() + "/"
+                + paint.getTypeface() + "/" + paint.getColor() + "/" + paint.isFakeBoldText();
+    }
+
+    /**
+     * @param key The key returned by {@link #getKey}
+     * @return The prepared layout, or null
+     */
+    Layout get(String key) {
+        return mCache.get(key);
+    }
+
+    /**
+     * Prepares a layout in the background and passes it to the view once
+     * it's ready, unless the view waits for another label by then
+     *
+     * @param view The {@link TabLabelView} waiting for the layout
+     * @param key The key returned by {@link #getKey}
+     * @param text The label
+     * @param width The width available to the text
+     */
+    void prepare(TabLabelView view, String key, CharSequence text, int width) {
+        if (!mCache.attach(key, view)) {
+            // Copy the paint, it's read in the background and used to draw
+            mCache.execute(new PrepareTask(key, text, width, new TextPaint(view.getPaint())), view);
+        }
+    }
+
+    /**
+     * @param text The label
+     * @param width The width available to the text
+     * @param paint The {@link TextPaint} to use
+     * @return The single line {@link Layout} of the label, ellipsized to fit
+     */
+    static Layout createLayout(CharSequence text, int width, TextPaint paint) {
+        final CharSequence ellipsized = TextUtils.ellipsize(text, paint, width,
+                TextUtils.TruncateAt.END);
+        return new StaticLayout(ellipsized, paint, width, Layout.Alignment.ALIGN_NORMAL, 1.0f,
+                0.0f, true);
+    }
+
+    /**
+     * Prepares the layout of a label
+     */
+    private static final class PrepareTask extends KeyedTaskCache.Task<TabLabelView, Layout> {
+
+        private final CharSequence mText;
+
+        private final int mWidth;
+
+        private final TextPaint mPaint;
+
+        /**
+         * Constructor of <code>PrepareTask</code>
+         */
+        PrepareTask(String key, CharSequence text, int width, TextPaint paint) {
+            super(key);
+            // Labels may be mutable spans, only read a copy in the background
+            mText = text.toString();
+            mWidth = width;
+            mPaint = paint;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Layout doInBackground(Void... params) {
+            return createLayout(mText, mWidth, mPaint);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void deliver(TabLabelView view, Layout layout) {
+            view.onLayoutPrepared(getKey(), layout);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.Layout;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.widget.TextView;
+
+/**
+ * The label of a {@link CarouselTab}. Besides the usual {@link TextView}
+ * behavior, it can draw a label laid out ahead of time by a
+ * {@link TabLabelLayoutCache}, in which case the text is never measured on
+ * the UI thread and changing it only invalidates the view. The label has a
+ * fixed size, so no layout pass is needed either.
+ */
+public class TabLabelView extends TextView {
+
+    /**
+     * The prepared layout being drawn, or null to draw as a {@link TextView}
+     */
+    private Layout mPreparedLayout;
+
+    /**
+     * The text of {@code #mPreparedLayout}, or of the layout being prepared
+     */
+    private CharSequence mPreparedText;
+
+    /**
+     * The key of the layout waited for, or null
+     */
+    private String mPendingKey;
+
+    /**
+     * @param context The {@link Context} to use
+     * @param attrs The attributes of the XML tag that is inflating the view
+     */
+    public TabLabelView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * Shows the given label with a layout prepared by the cache. A cached
+     * layout is shown immediately, otherwise it's prepared in the background
+     * and nothing is drawn until it's ready.
+     *
+     * @param label The string to show
+     * @param cache The {@link TabLabelLayoutCache} to use
+     * @param width The width of the view, as measured by
+     *            {@link CarouselContainer}
+     */
+    void setPreparedText(CharSequence label, TabLabelLayoutCache cache, int width) {
+        final CharSequence text = label != null ? label : "";
+        final int textWidth = width - getCompoundPaddingLeft() - getCompoundPaddingRight();
+        if (textWidth <= 0) {
+            setText(text);
+            return;
+        }
+        final String key = TabLabelLayoutCache.getKey(text, textWidth, getPaint());
+        final Layout layout = cache.get(key);
+        mPreparedText = text;
+        if (layout != null) {
+            showPreparedLayout(layout);
+            return;
+        }
+        if (mPreparedLayout != null || mPendingKey != null
+                || !TextUtils.equals(super.getText(), text)) {
+            // Don't keep showing a stale label while the new one is prepared
+            mPreparedLayout = null;
+            mPendingKey = key;
+            invalidate();
+        } else {
+            // The text shown is right, keep drawing it until the layout is
+            // ready
+            mPendingKey = key;
+        }
+        cache.prepare(this, key, text, textWidth);
+    }
+
+    /**
+     * Called by {@link TabLabelLayoutCache} when a layout has been prepared
+     *
+     * @param key The key of the layout
+     * @param layout The prepared {@link Layout}
+     */
+    void onLayoutPrepared(String key, Layout layout) {
+        if (key.equals(mPendingKey)) {
+            showPreparedLayout(layout);
+        }
+    }
+
+    /**
+     * Draws the prepared layout from now on
+     */
+    private void showPreparedLayout(Layout layout) {
+        mPendingKey = null;
+        if (mPreparedLayout != layout) {
+            mPreparedLayout = layout;
+            invalidate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setText(CharSequence text, BufferType type) {
+        // Called by the TextView constructor, before the fields are set
+        mPreparedLayout = null;
+        mPreparedText = null;
+        mPendingKey = null;
+        super.setText(text, type);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CharSequence getText() {
+        return mPreparedText != null ? mPreparedText : super.getText();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mPreparedText == null) {
+            super.onDraw(canvas);
+            return;
+        }
+        if (mPreparedLayout == null) {
+            if (mPendingKey == null || TextUtils.equals(super.getText(), mPreparedText)) {
+                super.onDraw(canvas);
+            }
+            return;
+        }
+        // Centered vertically, as laid out by the label's gravity
+        final int top = getPaddingTop();
+        final int space = getHeight() - top - getPaddingBottom();
+        final int saveCount = canvas.save();
+        canvas.translate(getCompoundPaddingLeft(),
+                top + (space - mPreparedLayout.getHeight()) / 2);
+        mPreparedLayout.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.view.ViewCompat;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Content for a {@link CarouselTab} image that changes continuously, such as
+ * a live preview or animated artwork. A producer thread draws each frame into
+ * one of two bitmaps allocated up front, while the tab shows the other one.
+ * The producer is told when to draw by an {@link OnFrameWantedListener}:
+ *
+ * <pre>
+ * content.setOnFrameWantedListener(new OnFrameWantedListener() {
+ *     public void onFrameWanted(TabLiveContent content) {
+ *         producerHandler.post(drawFrameRunnable);
+ *     }
+ * });
+ *
+ * // On the producer thread
+ * Bitmap buffer = content.lockBuffer();
+ * if (buffer != null) {
+ *     drawFrame(new Canvas(buffer));
+ *     content.unlockAndPost(buffer);
+ * }
+ * </pre>
+ *
+ * The buffers are handed over without locking. A posted frame is shown on the
+ * next animation frame, and only then does the previous one become available
+ * again, so frames are never produced faster than the display refreshes.
+ * {@link CarouselContainer} also slows the content down while its tab is
+ * partly offscreen or dimmed, and pauses it while the tab can't be seen at
+ * all; {@link #lockBuffer()} returns null until the next frame is due, and the
+ * listener is only called once it is.
+ * <p>
+ * Only one thread may produce frames at a time.
+ */
+public class TabLiveContent {
+
+    /**
+     * Frames are shown as fast as the display refreshes
+     */
+    static final int RATE_FULL = 0;
+
+    /**
+     * Frames are shown at {@code #THROTTLED_FRAMES_PER_SECOND}
+     */
+    static final int RATE_THROTTLED = 1;
+
+    /**
+     * No frames are produced
+     */
+    static final int RATE_PAUSED = 2;
+
+    /**
+     * The frame rate of a throttled content
+     */
+    private static final int THROTTLED_FRAMES_PER_SECOND = 10;
+
+    /**
+     * Minimum time between two frames of a throttled content
+     */
+    private static final long THROTTLED_FRAME_INTERVAL_NANOS = 1000000000L
+            / THROTTLED_FRAMES_PER_SECOND;
+
+    /**
+     * Used to swap the buffers on the UI thread
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The buffer the producer may draw into next, or null while it's drawing
+     * or waiting for the posted frame to be shown
+     */
+    private final AtomicReference<Bitmap> mFreeBuffer;
+
+    /**
+     * The frame posted by the producer and not shown yet, or null
+     */
+    private final AtomicReference<Bitmap> mPostedBuffer = new AtomicReference<Bitmap>();
+
+    /**
+     * True once a swap is scheduled
+     */
+    private final AtomicBoolean mSwapScheduled = new AtomicBoolean();
+
+    /**
+     * The buffer shown by the tab. Only used on the UI thread.
+     */
+    private Bitmap mFrontBuffer;
+
+    /**
+     * The tab showing the content, or null. Only used on the UI thread.
+     */
+    private CarouselTab mTab;
+
+    /**
+     * One of {@code #RATE_FULL}, {@code #RATE_THROTTLED} or
+     * {@code #RATE_PAUSED}
+     */
+    private volatile int mRate = RATE_PAUSED;
+
+    /**
+     * When the last frame was posted
+     */
+    private volatile long mLastPostNanos;
+
+    /**
+     * Told when the next frame is wanted, or null. Only used on the UI
+     * thread.
+     */
+    private OnFrameWantedListener mFrameWantedListener;
+
+    /**
+     * The size of the buffers
+     */
+    private final int mWidth, mHeight;
+
+    /**
+     * Constructor of <code>TabLiveContent</code>
+     *
+     * @param width The width of the frames
+     * @param height The height of the frames
+     * @param config The configuration of the frames
+     */
+    public TabLiveContent(int width, int height, Bitmap.Config config) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("The frame size must be positive");
+        }
+        mWidth = width;
+        mHeight = height;
+        mFrontBuffer = Bitmap.createBitmap(width, height, config);
+        mFreeBuffer = new AtomicReference<Bitmap>(Bitmap.createBitmap(width, height, config));
+    }
+
+    /**
+     * Called by the producer to get the buffer to draw the next frame into
+     *
+     * @return A {@link Bitmap} of the size of the content, or null if no frame
+     *         is wanted yet
+     */
+    public Bitmap lockBuffer() {
+        final int rate = mRate;
+        if (rate == RATE_PAUSED) {
+            return null;
+        }
+        if (rate == RATE_THROTTLED
+                && System.nanoTime() - mLastPostNanos < THROTTLED_FRAME_INTERVAL_NANOS) {
+            return null;
+        }
+        return mFreeBuffer.getAndSet(null);
+    }
+
+    /**
+     * Called by the producer once it has drawn a frame, which is shown on the
+     * next animation frame
+     *
+     * @param buffer The buffer returned by {@link #lockBuffer()}
+     */
+    public void unlockAndPost(Bitmap buffer) {
+        mLastPostNanos = System.nanoTime();
+        mPostedBuffer.set(buffer);
+        if (mSwapScheduled.compareAndSet(false, true)) {
+            mMainHandler.post(mScheduleSwapRunnable);
+        }
+    }
+
+    /**
+     * Called by the producer to give a buffer back without showing it
+     *
+     * @param buffer The buffer returned by {@link #lockBuffer()}
+     */
+    public void unlock(Bitmap buffer) {
+        mFreeBuffer.set(buffer);
+    }
+
+    /**
+     * Sets the listener told on the UI thread whenever the producer may draw
+     * the next frame: once the previous frame is shown, once a throttled
+     * content is due again, and when the content is resumed. It's called
+     * right away if a frame is already wanted.
+     *
+     * @param listener The {@link OnFrameWantedListener} to use, or null to
+     *            poll {@link #lockBuffer()} instead
+     */
+    public void setOnFrameWantedListener(OnFrameWantedListener listener) {
+        mFrameWantedListener = listener;
+        dispatchFrameWanted();
+    }
+
+    /**
+     * @return True if no frames are wanted until the tab can be seen again
+     */
+    public boolean isPaused() {
+        return mRate == RATE_PAUSED;
+    }
+
+    /**
+     * @return The width of the frames
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return The height of the frames
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @param tab The {@link CarouselTab} showing the content
+     * @return The frame to show first
+     */
+    Bitmap attach(CarouselTab tab) {
+        mTab = tab;
+        return mFrontBuffer;
+    }
+
+    /**
+     * Stops showing the content in a tab
+     */
+    void detach() {
+        mTab = null;
+        mRate = RATE_PAUSED;
+        mMainHandler.removeCallbacks(mFrameWantedRunnable);
+    }
+
+    /**
+     * @param rate One of {@code #RATE_FULL}, {@code #RATE_THROTTLED} or
+     *            {@code #RATE_PAUSED}
+     */
+    void setRate(int rate) {
+        if (mRate == rate) {
+            return;
+        }
+        mRate = rate;
+        mMainHandler.removeCallbacks(mFrameWantedRunnable);
+        if (rate != RATE_PAUSED) {
+            mMainHandler.post(mFrameWantedRunnable);
+        }
+    }
+
+    /**
+     * Shows the posted frame and hands the previous one back to the producer
+     */
+    private void swap() {
+        // Frames posted from now on need another swap
+        mSwapScheduled.set(false);
+        final Bitmap posted = mPostedBuffer.getAndSet(null);
+        if (posted == null) {
+            return;
+        }
+        final Bitmap previous = mFrontBuffer;
+        mFrontBuffer = posted;
+        if (mTab != null) {
+            mTab.onLiveFrame(posted);
+        }
+        mFreeBuffer.set(previous);
+        dispatchFrameWanted();
+    }
+
+    /**
+     * Tells {@link #mFrameWantedListener} the producer may draw, now if a
+     * frame is due, or once a throttled content is due again
+     */
+    private void dispatchFrameWanted() {
+        mMainHandler.removeCallbacks(mFrameWantedRunnable);
+        final OnFrameWantedListener listener = mFrameWantedListener;
+        final int rate = mRate;
+        if (listener == null || rate == RATE_PAUSED || mFreeBuffer.get() == null) {
+            return;
+        }
+        if (rate == RATE_THROTTLED) {
+            final long waitNanos = THROTTLED_FRAME_INTERVAL_NANOS
+                    - (System.nanoTime() - mLastPostNanos);
+            if (waitNanos > 0) {
+                mMainHandler.postDelayed(mFrameWantedRunnable, waitNanos / 1000000L + 1);
+                return;
+            }
+        }
+        listener.onFrameWanted(this);
+    }
+
+    /**
+     * Waits for the next animation frame to swap the buffers
+     */
+    private final Runnable mScheduleSwapRunnable = new Runnable() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            final CarouselTab tab = mTab;
+            if (tab != null) {
+                ViewCompat.postOnAnimation(tab, mSwapRunnable);
+            } else {
+                swap();
+            }
+        }
+    };
+
+    /**
+     * Swaps the buffers
+     */
+    private final Runnable mSwapRunnable = new Runnable() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            swap();
+        }
+    };
+
+    /**
+     * Tells the listener a frame is wanted, if it still is
+     */
+    private final Runnable mFrameWantedRunnable = new Runnable() {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            dispatchFrameWanted();
+        }
+    };
+
+    /**
+     * Interface definition for a callback telling the producer to draw
+     */
+    public interface OnFrameWantedListener {
+
+        /**
+         * Called on the UI thread when {@link TabLiveContent#lockBuffer()}
+         * will return a buffer. Hand the drawing over to the producer thread
+         * rather than drawing here.
+         *
+         * @param content The {@link TabLiveContent} wanting a frame
+         */
+        public void onFrameWanted(TabLiveContent content);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2013 Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tabcarousel;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.support.v4.util.LruCache;
+
+/**
+ * Blurs the part of the tab images that sits behind the label, so the label
+ * scrim can look like frosted glass. Only the label strip is blurred, once per
+ * image and size, from a copy downsampled on a background thread; the tab then
+ * draws the small result stretched as a static background, which costs the
+ * same as a plain color while the carousel is dragged or collapsed.
+ */
+public class TabScrimBlurrer {
+
+    /**
+     * Number of bytes used by the blurred strips kept in memory by default
+     */
+    private static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+
+    /**
+     * How much smaller than the scrim the blurred strip is
+     */
+    private static final int DOWNSAMPLE = 8;
+
+    /**
+     * Radius of the box blur, in pixels of the downsampled strip
+     */
+    private static final int BLUR_RADIUS = 2;
+
+    /**
+     * Number of box blur passes, three look close to a gaussian blur
+     */
+    private static final int BLUR_PASSES = 3;
+
+    /**
+     * Blurred strips by key, and the tasks blurring them
+     */
+    private final KeyedTaskCache<CarouselTab, Bitmap> mCache;
+
+    /**
+     * Constructor of <code>TabScrimBlurrer</code>
+     */
+    public TabScrimBlurrer() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor of <code>TabScrimBlurrer</code>
+     *
+     * @param maxSize The number of bytes used by the blurred strips kept in
+     *            memory
+     */
+    public TabScrimBlurrer(int maxSize) {
+        mCache = new KeyedTaskCache<CarouselTab, Bitmap>(new LruCache<String, Bitmap>(maxSize) {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return Utils.getBitmapSize(value);
+            }
+        });
+    }
+
+    /**
+     * Drops every blurred strip
+     */
+    public void evictAll() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Hands the blurred label strip of an image to a tab, immediately if it's
+     * cached, once it's blurred in the background otherwise
+     *
+     * @param tab The {@link CarouselTab} showing the image
+     * @param key The key of the image
+     * @param bitmap The image, or a preview of it, covering the whole tab
+     * @param scrimWidth The width of the scrim
+     * @param scrimHeight The height of the scrim, at the bottom of the tab
+     * @param tabHeight The height of the tab image
+     */
+    void blur(CarouselTab tab, String key, Bitmap bitmap, int scrimWidth, int scrimHeight,
+            int tabHeight) {
+        final String scrimKey = getKey(key, scrimWidth, scrimHeight);
+        final Bitmap cached = mCache.get(scrimKey);
+        if (cached != null) {
+            tab.onScrimBlurred(key, cached);
+            return;
+        }
+        if (!mCache.attach(scrimKey, tab)) {
+            mCache.execute(new BlurTask(scrimKey, key, bitmap, scrimWidth, scrimHeight,
+                    tabHeight), tab);
+        }
+    }
+
+    /**
+     * @return The key of the strip blurred for an image and a scrim size
+     */
+    private static String getKey(String key, int scrimWidth, int scrimHeight) {
+        return key + "#scrim@" + scrimWidth + "x" + scrimHeight;
+    }
+
+    /**
+     * Downsamples and blurs the bottom of an image
+     *
+     * @param bitmap The image, covering the whole tab
+     * @param scrimWidth The width of the scrim
+     * @param scrimHeight The height of the scrim, at the bottom of the tab
+     * @param tabHeight The height of the tab image
+     * @return The blurred strip, or null if the image can't be read
+     */
+    static Bitmap blurStrip(Bitmap bitmap, int scrimWidth, int scrimHeight, int tabHeight) {
+        if (bitmap == null || bitmap.isRecycled() || tabHeight <= 0) {
+            return null;
+        }
+        // The image may be a preview or decoded smaller than the tab
+        final int stripHeight = Math.max(1, bitmap.getHeight() * scrimHeight / tabHeight);
+        final Rect src = new Rect(0, bitmap.getHeight() - stripHeight, bitmap.getWidth(),
+                bitmap.getHeight());
+        final int width = Math.max(1, scrimWidth / DOWNSAMPLE);
+        final int height = Math.max(1, scrimHeight / DOWNSAMPLE);
+        final Bitmap strip = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        new Canvas(strip).drawBitmap(bitmap, src, new Rect(0, 0, width, height), new Paint(
+                Paint.FILTER_BITMAP_FLAG));
+
+        final int[] pixels = new int[width * height];
+        final int[] scratch = new int[width * height];
+        strip.getPixels(pixels, 0, width, 0, 0, width, height);
+        for (int i = 0; i < BLUR_PASSES; i++) {
+            boxBlur(pixels, scratch, width, height, 1, width);
+            boxBlur(scratch, pixels, height, width, width, 1);
+        }
+        strip.setPixels(pixels, 0, width, 0, 0, width, height);
+        return strip;
+    }
+
+    /**
+     * Blurs every line of an image along one axis, clamping at the edges
+     *
+     * @param in The pixels to blur
+     * @param out Receives the blurred pixels
+     * @param length The number of pixels in a line
+     * @param lines The number of lines
+     * @param step The distance between two pixels of a line
+     * @param lineStep The distance between two lines
+     */
+    private static void boxBlur(int[] in, int[] out, int length, int lines, int step,
+            int lineStep) {
+        final int size = 2 * BLUR_RADIUS + 1;
+        for (int line = 0; line < lines; line++) {
+            final int start = line * lineStep;
+            int a = 0, r = 0, g = 0, b = 0;
+            for (int i = -BLUR_RADIUS; i <= BLUR_RADIUS; i++) {
+                final int pixel = in[start + Math.min(Math.max(i, 0), length - 1) * step];
+                a += pixel >>> 24;
+                r += (pixel >> 16) & 0xff;
+                g += (pixel >> 8) & 0xff;
+                b += pixel & 0xff;
+            }
+            for (int i = 0; i < length; i++) {
+                out[start + i * step] = (a / size) << 24 | (r / size) << 16 | (g / size) << 8
+                        | (b / size);
+                // Slide the window
+                final int leaving = in[start + Math.max(i - BLUR_RADIUS, 0) * step];
+                final int entering = in[start + Math.min(i + BLUR_RADIUS + 1, length - 1) * step];
+                a += (entering >>> 24) - (leaving >>> 24);
+                r += ((entering >> 16) & 0xff) - ((leaving >> 16) & 0xff);
+                g += ((entering >> 8) & 0xff) - ((leaving >> 8) & 0xff);
+                b += (entering & 0xff) - (leaving & 0xff);
+            }
+        }
+    }
+
+    /**
+     * Blurs the label strip of a single image in the background
+     */
+    private static final class BlurTask extends KeyedTaskCache.Task<CarouselTab, Bitmap> {
+
+        private final String mImageKey;
+
+        private final Bitmap mBitmap;
+
+        private final int mScrimWidth;
+
+        private final int mScrimHeight;
+
+        private final int mTabHeight;
+
+        /**
+         * Constructor of <code>BlurTask</code>
+         */
+        BlurTask(String scrimKey, String imageKey, Bitmap bitmap, int scrimWidth,
+                int scrimHeight, int tabHeight) {
+            super(scrimKey);
+            mImageKey = imageKey;
+            mBitmap = bitmap;
+            mScrimWidth = scrimWidth;
+            mScrimHeight = scrimHeight;
+            mTabHeight = tabHeight;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected Bitmap doInBackground(Void... params) {
+            return blurStrip(mBitmap, mScrimWidth, mScrimHeight, mTabHeight);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void deliver(CarouselTab tab, Bitmap strip) {
+            tab.onScrimBlurred(mImageKey, strip);
+        }
+    }
+}
@@ -19,11 +19,17 @@ package com.android.tabcarousel;
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.content.res.Resources.Theme;
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.util.TypedValue;
 import android.view.View;
 import android.view.ViewTreeObserver.OnGlobalLayoutListener;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Array;
+
 /**
  * Helpers
  */
@@ -33,6 +39,16 @@ public final class Utils {
     public Utils() {
     }
 
+    /**
+     * Used to determine if the device is running Gingerbread MR1 or greater
+     * 
+     * @return True if the device is running Gingerbread MR1 or greater, false
+     *         otherwise
+     */
+    public static final boolean hasGingerbreadMR1() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1;
+    }
+
     /**
      * Used to determine if the device is running Honeycomb or greater
      * 
@@ -43,6 +59,16 @@ public final class Utils {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
     }
 
+    /**
+     * Used to determine if the device is running Ice Cream Sandwich or greater
+     * 
+     * @return True if the device is running Ice Cream Sandwich or greater,
+     *         false otherwise
+     */
+    public static final boolean hasIceCreamSandwich() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH;
+    }
+
     /**
      * Used to determine if the device is running Jelly Bean or greater
      * 
@@ -53,6 +79,25 @@ public final class Utils {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
     }
 
+    /**
+     * Used to determine if the device is running Jelly Bean MR2 or greater
+     * 
+     * @return True if the device is running Jelly Bean MR2 or greater, false
+     *         otherwise
+     */
+    public static final boolean hasJellyBeanMR2() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /**
+     * Used to determine if the device is running KitKat or greater
+     * 
+     * @return True if the device is running KitKat or greater, false otherwise
+     */
+    public static final boolean hasKitKat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
     /**
      * Resolves the given attribute id of the theme to a resource id
      */
@@ -119,4 +164,74 @@ public final class Utils {
         };
         view.getViewTreeObserver().addOnGlobalLayoutListener(listener);
     }
+
+    /**
+     * Runs an {@link AsyncTask} in parallel with other tasks where possible
+     * 
+     * @param task The {@link AsyncTask} to execute
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static void execute(AsyncTask<Void, ?, ?> task) {
+        if (hasHoneycomb()) {
+            task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        } else {
+            task.execute();
+        }
+    }
+
+    /**
+     * @param bitmap The {@link Bitmap} to measure
+     * @return The number of bytes used to store the pixels of the bitmap
+     */
+    public static int getBitmapSize(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /**
+     * Closes the given {@link Closeable}, ignoring null and any errors
+     */
+    public static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the array with the element appended, used to update
+     * listener arrays that are dispatched to without copying
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T[] appendElement(T[] array, T element) {
+        final T[] result = (T[]) Array.newInstance(array.getClass().getComponentType(),
+                array.length + 1);
+        System.arraycopy(array, 0, result, 0, array.length);
+        result[array.length] = element;
+        return result;
+    }
+
+    /**
+     * Returns a copy of the array without the element, or the array itself if
+     * it doesn't hold the element
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T[] removeElement(T[] array, T element) {
+        int index = -1;
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == element) {
+                index = i;
+                break;
+            }
+        }
+        if (index == -1) {
+            return array;
+        }
+        final T[] result = (T[]) Array.newInstance(array.getClass().getComponentType(),
+                array.length - 1);
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
 }